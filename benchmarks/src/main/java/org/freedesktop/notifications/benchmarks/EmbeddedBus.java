@@ -0,0 +1,81 @@
+package org.freedesktop.notifications.benchmarks;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A private bus independent of any desktop session, optionally with a server connection owning
+ * {@link Notifications#NAME}.
+ */
+public class EmbeddedBus implements AutoCloseable
+{
+
+    private final Path directory;
+
+    private final String address;
+
+    private final EmbeddedDBusDaemon daemon;
+
+    private DBusConnection server;
+
+    public EmbeddedBus() throws IOException, DBusException
+    {
+        this.directory = Files.createTempDirectory("dbus-bench");
+        this.address = "unix:path=" + this.directory.resolve("bus.sock");
+        this.daemon = new EmbeddedDBusDaemon(this.address + ",listen=true");
+        this.daemon.startInBackgroundAndWait(5000);
+    }
+
+    /**
+     * Starts the bus and exports the server at {@link Notifications#OBJECT_PATH}.
+     */
+    public EmbeddedBus(DBusInterface notifications) throws IOException, DBusException
+    {
+        this();
+        this.server = connect();
+        this.server.requestBusName(Notifications.NAME);
+        this.server.exportObject(Notifications.OBJECT_PATH, notifications);
+    }
+
+    /**
+     * @return a new, unshared connection to the bus
+     */
+    public DBusConnection connect() throws DBusException
+    {
+        return DBusConnectionBuilder.forAddress(this.address).withShared(false).build();
+    }
+
+    public String getAddress()
+    {
+        return this.address;
+    }
+
+    /**
+     * @return the server connection, or null if no server was exported
+     */
+    public DBusConnection getServer()
+    {
+        return this.server;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.server != null)
+        {
+            this.server.disconnect();
+        }
+        this.daemon.close();
+        Files.deleteIfExists(this.directory.resolve("bus.sock"));
+        Files.deleteIfExists(this.directory);
+    }
+
+}
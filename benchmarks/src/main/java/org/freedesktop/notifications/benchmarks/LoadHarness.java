@@ -0,0 +1,310 @@
+package org.freedesktop.notifications.benchmarks;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.notifications.NotificationServer;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives open and close calls from concurrent clients at a fixed total rate, and reports latency percentiles,
+ * throughput and the delay before {@link Notifications.NotificationClosed} arrives.
+ * <p/>
+ * Each call is timed from when it was scheduled to start rather than when it started, so a server falling behind
+ * shows up as latency instead of a lower request rate. Runs with the same options and seed issue the same calls.
+ * <pre>
+ * java -cp target/benchmarks.jar org.freedesktop.notifications.benchmarks.LoadHarness \
+ *     --server memory --clients 8 --rate 2000 --duration 10 --warmup 2 --close 0.3 --seed 1
+ * </pre>
+ * {@code --server} is {@code stub} for a server that does nothing, {@code memory} for {@link NotificationServer},
+ * or {@code none} to call whichever server owns the name on {@code --address}. Without {@code --address} a private
+ * embedded bus is started.
+ */
+public class LoadHarness
+{
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final int MAX_OPEN_PER_CLIENT = 64;
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    private final Map<String, String> options;
+
+    private final Histogram signalLag = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+
+    private final AtomicLong errors = new AtomicLong();
+
+    LoadHarness(Map<String, String> options)
+    {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (!args[i].startsWith("--") || i + 1 >= args.length)
+            {
+                System.err.println("Expected --option value pairs, got " + args[i]);
+                System.exit(2);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        new LoadHarness(options).run(System.out);
+    }
+
+    void run(PrintStream out) throws Exception
+    {
+        int clients = intOption("clients", 4);
+        double rate = doubleOption("rate", 1000);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(intOption("warmup", 2));
+        long durationNanos = TimeUnit.SECONDS.toNanos(intOption("duration", 10));
+        double closeRatio = doubleOption("close", 0.3);
+        long seed = Long.parseLong(this.options.getOrDefault("seed", "1"));
+        String server = this.options.getOrDefault("server", "memory");
+        String address = this.options.get("address");
+
+        EmbeddedBus bus = null;
+        NotificationServer memory = null;
+        DBusConnection serverConnection = null;
+        if (address == null)
+        {
+            bus = new EmbeddedBus();
+            address = bus.getAddress();
+        }
+        try
+        {
+            if (!"none".equals(server))
+            {
+                serverConnection = connect(address);
+                if ("memory".equals(server))
+                {
+                    memory = new NotificationServer(NotificationServer.DEFAULT_INFORMATION,
+                            Math.max(NotificationServer.DEFAULT_CAPACITY, clients * MAX_OPEN_PER_CLIENT * 2),
+                            0,
+                            Notifications.Capabilities.ACTIONS,
+                            Notifications.Capabilities.BODY);
+                    memory.export(serverConnection);
+                } else if ("stub".equals(server))
+                {
+                    export(serverConnection, new StubNotifications.Server());
+                } else
+                {
+                    throw new IllegalArgumentException("Unknown server " + server);
+                }
+            }
+
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) * clients / rate);
+            long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            long measureFrom = start + warmupNanos;
+            long end = measureFrom + durationNanos;
+            CountDownLatch done = new CountDownLatch(clients);
+            List<Client> running = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++)
+            {
+                Client client = new Client(connect(address), new Random(seed + i), closeRatio);
+                running.add(client);
+                // stagger the clients so their calls are spread evenly over each interval
+                long offset = intervalNanos * i / clients;
+                Thread thread = new Thread(() -> {
+                    try
+                    {
+                        client.run(start + offset, intervalNanos, measureFrom, end);
+                    } finally
+                    {
+                        done.countDown();
+                    }
+                }, "LoadHarness-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            done.await();
+            // let the last signals arrive
+            Thread.sleep(200);
+
+            Histogram latency = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            Histogram opens = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            Histogram closes = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            long finished = end;
+            for (Client client : running)
+            {
+                opens.add(client.opens);
+                closes.add(client.closes);
+                finished = Math.max(finished, client.finished);
+                client.connection.disconnect();
+            }
+            latency.add(opens);
+            latency.add(closes);
+
+            // a server that fell behind finishes the scheduled calls after the end of the run
+            double seconds = (finished - measureFrom) / 1e9;
+            out.printf("server=%s clients=%d target_rate=%.1f achieved_rate=%.1f errors=%d seed=%d%n",
+                    server, clients, rate, latency.getTotalCount() / seconds, this.errors.get(), seed);
+            print(out, "all", latency);
+            print(out, "open", opens);
+            print(out, "close", closes);
+            print(out, "signal_lag", this.signalLag);
+            String histogram = this.options.get("hgrm");
+            if (histogram != null)
+            {
+                try (PrintStream file = new PrintStream(new FileOutputStream(histogram)))
+                {
+                    latency.outputPercentileDistribution(file, 1000.0);
+                }
+            }
+        } finally
+        {
+            if (memory != null)
+            {
+                memory.close();
+            }
+            if (serverConnection != null)
+            {
+                serverConnection.disconnect();
+            }
+            if (bus != null)
+            {
+                bus.close();
+            }
+        }
+    }
+
+    private static void print(PrintStream out, String name, Histogram histogram)
+    {
+        out.printf("%-10s count=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                name,
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private static DBusConnection connect(String address) throws DBusException
+    {
+        return DBusConnectionBuilder.forAddress(address).withShared(false).build();
+    }
+
+    private static void export(DBusConnection connection, DBusInterface object) throws DBusException
+    {
+        connection.exportObject(Notifications.OBJECT_PATH, object);
+        connection.requestBusName(Notifications.NAME);
+    }
+
+    private int intOption(String name, int defaultValue)
+    {
+        String value = this.options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private double doubleOption(String name, double defaultValue)
+    {
+        String value = this.options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private final class Client
+    {
+
+        private final DBusConnection connection;
+
+        private final Notifications notifications;
+
+        private final Random random;
+
+        private final double closeRatio;
+
+        private final ArrayDeque<UInt32> open = new ArrayDeque<>();
+
+        private final Map<UInt32, Long> closing = new ConcurrentHashMap<>();
+
+        private final Histogram opens = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+
+        private final Histogram closes = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+
+        private final Notifications.Actions actions = new Notifications.Actions().addAction("default", "Open").freeze();
+
+        private final Notifications.Hints hints = SerializationBenchmark.sampleHints().freeze();
+
+        private volatile long measureFrom;
+
+        private volatile long finished;
+
+        Client(DBusConnection connection, Random random, double closeRatio) throws DBusException
+        {
+            this.connection = connection;
+            this.random = random;
+            this.closeRatio = closeRatio;
+            this.notifications = connection.getRemoteObject(
+                    Notifications.NAME, Notifications.OBJECT_PATH, Notifications.class);
+            connection.addSigHandler(Notifications.NotificationClosed.class, signal -> {
+                Long sent = this.closing.remove(signal.getId());
+                if (sent != null && sent >= this.measureFrom)
+                {
+                    signalLag.recordValue(Math.min(System.nanoTime() - sent, HIGHEST_TRACKABLE_NANOS));
+                }
+            });
+        }
+
+        void run(long start, long intervalNanos, long measureFrom, long end)
+        {
+            this.measureFrom = measureFrom;
+            for (long intended = start; intended < end; intended += intervalNanos)
+            {
+                long wait = intended - System.nanoTime();
+                if (wait > 0)
+                {
+                    LockSupport.parkNanos(wait);
+                }
+                boolean close = !this.open.isEmpty()
+                        && (this.open.size() >= MAX_OPEN_PER_CLIENT || this.random.nextDouble() < this.closeRatio);
+                try
+                {
+                    if (close)
+                    {
+                        UInt32 id = this.open.pollFirst();
+                        this.closing.put(id, System.nanoTime());
+                        this.notifications.close(id);
+                    } else
+                    {
+                        this.open.addLast(this.notifications.open("LoadHarness", NO_REPLACE, "",
+                                "Notification " + this.random.nextInt(1000), "", this.actions, this.hints, 0));
+                    }
+                } catch (RuntimeException e)
+                {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                if (intended >= measureFrom)
+                {
+                    long latency = Math.min(System.nanoTime() - intended, HIGHEST_TRACKABLE_NANOS);
+                    (close ? this.closes : this.opens).recordValue(latency);
+                }
+            }
+            this.finished = System.nanoTime();
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.freedesktop.notifications.benchmarks;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of marshalling a complete {@code Notify} method call, as the proxy does for every {@link Notifications#open}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallingBenchmark
+{
+
+    private static final String SIGNATURE = "susssasa{sv}i";
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    /**
+     * {@code plain} has no hints or actions, {@code templated} overlays a frozen template, and {@code image} adds
+     * a 64x64 image-data hint.
+     */
+    @Param({ "plain", "templated", "image" })
+    public String payload;
+
+    private Notifications.Actions actions;
+
+    private Notifications.Hints hints;
+
+    @Setup
+    public void setup()
+    {
+        switch (this.payload)
+        {
+            case "plain":
+                this.actions = new Notifications.Actions().freeze();
+                this.hints = new Notifications.Hints().freeze();
+                break;
+            case "templated":
+                this.actions = SerializationBenchmark.sampleActions().freeze();
+                this.hints = SerializationBenchmark.sampleHints().freeze();
+                break;
+            case "image":
+                Notifications.Hints hints = SerializationBenchmark.sampleHints();
+                hints.set(Notifications.HintKey.IMAGE_DATA, Notifications.RawImage.fromArgb(64, 64, new int[64 * 64]));
+                this.actions = SerializationBenchmark.sampleActions().freeze();
+                this.hints = hints.freeze();
+                break;
+            default:
+                throw new IllegalArgumentException(this.payload);
+        }
+    }
+
+    @Benchmark
+    public Message notifyCall() throws DBusException
+    {
+        Notifications.Hints hints = new Notifications.Hints(this.hints);
+        hints.set(Notifications.HintKey.VALUE, 50);
+        return new MethodCall(Notifications.NAME,
+                Notifications.OBJECT_PATH,
+                Notifications.NAME,
+                "Notify",
+                (byte) 0,
+                SIGNATURE,
+                "benchmark",
+                NO_REPLACE,
+                "",
+                "Summary",
+                "Body of the notification",
+                this.actions.serialize()[0],
+                hints.serialize()[0],
+                -1);
+    }
+
+}
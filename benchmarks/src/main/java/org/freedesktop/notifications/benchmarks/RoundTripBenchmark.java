@@ -0,0 +1,110 @@
+package org.freedesktop.notifications.benchmarks;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.notifications.AsyncNotifications;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Notify} calls through a private embedded bus to a {@link StubNotifications.Server}.
+ * <p/>
+ * {@link #notifyLatency} samples single call latency so percentiles are reported; the others measure throughput of
+ * blocking calls from several threads and of pipelined asynchronous calls.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark
+{
+
+    private static final int PIPELINE_DEPTH = 64;
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    private EmbeddedBus bus;
+
+    private DBusConnection client;
+
+    private Notifications notifications;
+
+    private AsyncNotifications async;
+
+    private Notifications.Actions actions;
+
+    private Notifications.Hints hints;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, DBusException
+    {
+        this.bus = new EmbeddedBus(new StubNotifications.Server());
+        this.client = this.bus.connect();
+        this.notifications = proxy();
+        this.async = new AsyncNotifications(this.client, PIPELINE_DEPTH);
+        this.actions = SerializationBenchmark.sampleActions().freeze();
+        this.hints = SerializationBenchmark.sampleHints().freeze();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        this.client.disconnect();
+        this.bus.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public UInt32 notifyLatency()
+    {
+        return this.notifications.open("benchmark", NO_REPLACE, "", "Summary", "Body", this.actions, this.hints, -1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(4)
+    public UInt32 notifyThroughput()
+    {
+        return this.notifications.open("benchmark", NO_REPLACE, "", "Summary", "Body", this.actions, this.hints, -1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public Object notifyPipelined()
+    {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[PIPELINE_DEPTH];
+        for (int i = 0; i < calls.length; i++)
+        {
+            calls[i] = this.async.open("benchmark", NO_REPLACE, "", "Summary", "Body", this.actions, this.hints, -1);
+        }
+        return CompletableFuture.allOf(calls).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Notifications proxy() throws DBusException
+    {
+        return this.client.getRemoteObject(Notifications.NAME, Notifications.OBJECT_PATH, Notifications.class);
+    }
+
+}
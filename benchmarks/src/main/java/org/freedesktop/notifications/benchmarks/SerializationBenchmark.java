@@ -0,0 +1,122 @@
+package org.freedesktop.notifications.benchmarks;
+
+import org.freedesktop.Notifications;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning hints, actions and images into their wire form, before any message is built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark
+{
+
+    private Notifications.Hints template;
+
+    private Notifications.Actions actions;
+
+    private Notifications.Actions frozenActions;
+
+    private int[] argb;
+
+    private BufferedImage image;
+
+    private int percent;
+
+    @Setup
+    public void setup()
+    {
+        this.template = sampleHints().freeze();
+        this.actions = sampleActions();
+        this.frozenActions = sampleActions().freeze();
+        this.argb = new int[64 * 64];
+        for (int i = 0; i < this.argb.length; i++)
+        {
+            this.argb[i] = 0xFF000000 | (i * 0x010203);
+        }
+        this.image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        this.image.setRGB(0, 0, 64, 64, this.argb, 0, 64);
+    }
+
+    static Notifications.Hints sampleHints()
+    {
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.CATEGORY, "transfer.complete");
+        hints.set(Notifications.HintKey.DESKTOP_ENTRY, "org.example.App");
+        hints.set(Notifications.HintKey.RESIDENT, true);
+        hints.set(Notifications.HintKey.SOUND_NAME, "complete-download");
+        return hints;
+    }
+
+    static Notifications.Actions sampleActions()
+    {
+        return new Notifications.Actions()
+                .addAction("default", "Open")
+                .addAction("show", "Show in folder")
+                .addAction("retry", "Retry")
+                .addAction("dismiss", "Dismiss");
+    }
+
+    @Benchmark
+    public Object[] hintsFresh()
+    {
+        Notifications.Hints hints = sampleHints();
+        hints.set(Notifications.HintKey.VALUE, this.percent++ & 127);
+        return hints.serialize();
+    }
+
+    @Benchmark
+    public Object[] hintsOverlay()
+    {
+        Notifications.Hints hints = new Notifications.Hints(this.template);
+        hints.set(Notifications.HintKey.VALUE, this.percent++ & 127);
+        return hints.serialize();
+    }
+
+    @Benchmark
+    public Object[] hintsFrozen()
+    {
+        return this.template.serialize();
+    }
+
+    @Benchmark
+    public Object[] actions()
+    {
+        return this.actions.serialize();
+    }
+
+    @Benchmark
+    public Object[] actionsFrozen()
+    {
+        return this.frozenActions.serialize();
+    }
+
+    @Benchmark
+    public Notifications.RawImage rawImageFromArgb()
+    {
+        return Notifications.RawImage.fromArgb(64, 64, this.argb);
+    }
+
+    @Benchmark
+    public Notifications.RawImage rawImageFromBufferedImage()
+    {
+        return Notifications.RawImage.fromBufferedImage(this.image);
+    }
+
+}
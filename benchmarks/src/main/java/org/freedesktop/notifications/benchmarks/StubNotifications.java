@@ -0,0 +1,69 @@
+package org.freedesktop.notifications.benchmarks;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.DBusMemberName;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The least a server must export to answer {@link Notifications#open} and {@link Notifications#close}, so round
+ * trips measure the bus rather than the server.
+ */
+@DBusInterfaceName(Notifications.NAME)
+public interface StubNotifications extends DBusInterface
+{
+
+    @DBusMemberName("Notify")
+    UInt32 open(
+            String app_name,
+            UInt32 replaces_id,
+            String app_icon,
+            String summary,
+            String body,
+            Notifications.Actions actions,
+            Notifications.Hints hints,
+            int expire_timeout);
+
+    @DBusMemberName("CloseNotification")
+    void close(UInt32 id);
+
+    class Server implements StubNotifications
+    {
+
+        private final AtomicInteger ids = new AtomicInteger();
+
+        @Override
+        public UInt32 open(
+                String app_name,
+                UInt32 replaces_id,
+                String app_icon,
+                String summary,
+                String body,
+                Notifications.Actions actions,
+                Notifications.Hints hints,
+                int expire_timeout)
+        {
+            if (replaces_id.intValue() != 0)
+            {
+                return replaces_id;
+            }
+            return new UInt32(Integer.toUnsignedLong(this.ids.incrementAndGet()));
+        }
+
+        @Override
+        public void close(UInt32 id)
+        {
+        }
+
+        @Override
+        public String getObjectPath()
+        {
+            return Notifications.OBJECT_PATH;
+        }
+
+    }
+
+}
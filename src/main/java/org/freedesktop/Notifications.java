@@ -16,6 +16,11 @@ import org.freedesktop.dbus.messages.DBusSignal;
 import org.freedesktop.dbus.types.UInt32;
 import org.freedesktop.dbus.types.Variant;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -28,6 +33,12 @@ public interface Notifications extends DBusInterface
     String NAME = "org.freedesktop.Notifications";
     String OBJECT_PATH = "/org/freedesktop/Notifications";
 
+    /**
+     * The boolean property, read through {@code org.freedesktop.DBus.Properties}, that is true while notifications
+     * are inhibited. Not part of the specification, but exposed by servers which implement {@link #inhibit}.
+     */
+    String INHIBITED = "Inhibited";
+
     @DBusMemberName("Notify")
     UInt32 open(
             String app_name,
@@ -66,6 +77,34 @@ public interface Notifications extends DBusInterface
 
     }
 
+    /**
+     * The reason given by {@link NotificationClosed}
+     */
+    @Getter
+    @AllArgsConstructor
+    enum CloseReason
+    {
+        EXPIRED(1),
+        DISMISSED(2),
+        CLOSED(3),
+        UNDEFINED(4);
+
+        private final int code;
+
+        public static CloseReason of(UInt32 code)
+        {
+            for (CloseReason reason : values())
+            {
+                if (reason.code == code.intValue())
+                {
+                    return reason;
+                }
+            }
+            return UNDEFINED;
+        }
+
+    }
+
     interface Capabilities
     {
         /**
@@ -242,14 +281,37 @@ public interface Notifications extends DBusInterface
         private String text;
     }
 
-    @Getter
-    @NoArgsConstructor
+    /**
+     * A mutable list of actions, or an immutable template created by {@link #freeze()}.
+     * <p/>
+     * Templates build the string array sent on the bus once and may be shared between notifications and threads. The
+     * array is still marshalled into every message that carries it.
+     */
     class Actions implements DBusSerializable
     {
-        private final List<Action> actions = new LinkedList<>();
+        @Getter
+        private final List<Action> actions;
+
+        private final Object[] serialized;
+
+        public Actions()
+        {
+            this.actions = new ArrayList<>();
+            this.serialized = null;
+        }
+
+        private Actions(List<Action> actions)
+        {
+            this.actions = Collections.unmodifiableList(new ArrayList<>(actions));
+            this.serialized = new Object[]{ toArray(this.actions) };
+        }
 
         public Actions addAction(Action action)
         {
+            if (isFrozen())
+            {
+                throw new UnsupportedOperationException("Actions are frozen");
+            }
             this.actions.add(action);
             return this;
         }
@@ -259,18 +321,40 @@ public interface Notifications extends DBusInterface
             return addAction(new Action(identifier, text));
         }
 
+        /**
+         * @return an immutable copy of these actions, or this if they are already immutable
+         */
+        public Actions freeze()
+        {
+            return isFrozen() ? this : new Actions(this.actions);
+        }
+
+        public boolean isFrozen()
+        {
+            return this.serialized != null;
+        }
+
         @Override
         public Object[] serialize()
         {
-            int entries = this.actions.size();
+            if (this.serialized != null)
+            {
+                return this.serialized;
+            }
+            return new Object[]{ toArray(this.actions) };
+        }
+
+        private static String[] toArray(List<Action> actions)
+        {
+            int entries = actions.size();
             String[] serializable = new String[entries * 2];
-            for (int i = 0; i < actions.size(); i++)
+            for (int i = 0; i < entries; i++)
             {
                 Action action = actions.get(i);
                 serializable[(i * 2)] = action.getIdentifier();
                 serializable[(i * 2) + 1] = action.getText();
             }
-            return new Object[]{ serializable };
+            return serializable;
         }
 
         public void deserialize(String[] args)
@@ -306,52 +390,263 @@ public interface Notifications extends DBusInterface
 
     }
 
+    /**
+     * A mutable set of hints, an immutable template created by {@link #freeze()}, or an overlay of a template.
+     * <p/>
+     * Templates are never copied and may be shared between notifications and threads. An overlay created with
+     * {@link #Hints(Hints)} holds only the hints set on it, and serializes as a view over the template. Either way the
+     * map is still marshalled into every message that carries it. Freezing saves copying the hints, not marshalling
+     * them.
+     */
     class Hints implements DBusSerializable
     {
 
+        private static final Variant<?> REMOVED = new Variant<>("");
+
         private final Map<String, Variant<?>> hints;
 
+        private final Hints template;
+
+        private final Object[] serialized;
+
         public Hints()
         {
             this.hints = new HashMap<>();
+            this.template = null;
+            this.serialized = null;
+        }
+
+        /**
+         * Creates hints which add to, override or remove the hints of the template without copying them.
+         *
+         * @param template frozen hints, other hints are frozen first
+         */
+        public Hints(Hints template)
+        {
+            this.hints = new HashMap<>(4);
+            this.template = template.freeze();
+            this.serialized = null;
+        }
+
+        private Hints(Map<String, Variant<?>> hints)
+        {
+            this.hints = Collections.unmodifiableMap(hints);
+            this.template = null;
+            this.serialized = new Object[]{ this.hints };
         }
 
         public <T> void set(HintKey<T> key, T value)
         {
+            checkMutable();
             this.hints.put(key.getKey(), new Variant<>(value, key.type));
         }
 
+        @SuppressWarnings("unchecked")
         public <T> T get(HintKey<T> key)
         {
-            Variant<?> variant = this.hints.get(key.getKey());
+            Variant<?> variant = lookup(key.getKey());
             if (variant == null)
             {
                 return null;
             }
-            return key.type.cast(variant.getValue());
+            Object value = variant.getValue();
+            if (key.type == RawImage.class && value instanceof Object[])
+            {
+                // received from the bus, where the struct arrives as its fields
+                value = RawImage.fromFields((Object[]) value);
+            }
+            // primitive keys such as boolean.class can't cast their boxed values
+            return key.type.isPrimitive() ? (T) value : key.type.cast(value);
+        }
+
+        public boolean contains(HintKey<?> key)
+        {
+            return lookup(key.getKey()) != null;
+        }
+
+        public void remove(HintKey<?> key)
+        {
+            checkMutable();
+            if (this.template != null && this.template.contains(key))
+            {
+                this.hints.put(key.getKey(), REMOVED);
+            } else
+            {
+                this.hints.remove(key.getKey());
+            }
         }
 
         public Set<String> keys()
         {
-            return this.hints.keySet();
+            return entries().keySet();
         }
 
         public void setAll(Hints other)
         {
-            this.hints.putAll(other.hints);
+            checkMutable();
+            this.hints.putAll(other.entries());
+        }
+
+        /**
+         * @return an immutable copy of these hints, or this if they are already immutable
+         */
+        public Hints freeze()
+        {
+            return isFrozen() ? this : new Hints(new HashMap<>(entries()));
+        }
+
+        public boolean isFrozen()
+        {
+            return this.serialized != null;
         }
 
         @Override
         public Object[] serialize()
         {
-            return new Object[]{ hints };
+            if (this.serialized != null)
+            {
+                return this.serialized;
+            }
+            if (this.template != null && this.hints.isEmpty())
+            {
+                return this.template.serialized;
+            }
+            return new Object[]{ entries() };
         }
 
         public void deserialize(Map<String, Variant<?>> serializable)
         {
+            checkMutable();
             this.hints.putAll(serializable);
         }
 
+        private Variant<?> lookup(String key)
+        {
+            Variant<?> variant = this.hints.get(key);
+            if (variant == null && this.template != null)
+            {
+                variant = this.template.hints.get(key);
+            }
+            return variant == REMOVED ? null : variant;
+        }
+
+        private Map<String, Variant<?>> entries()
+        {
+            return this.template == null ? this.hints : new Overlay();
+        }
+
+        private void checkMutable()
+        {
+            if (isFrozen())
+            {
+                throw new UnsupportedOperationException("Hints are frozen");
+            }
+        }
+
+        /**
+         * The hints set on an overlay, followed by the template's hints they don't override.
+         */
+        private final class Overlay extends AbstractMap<String, Variant<?>>
+        {
+
+            @Override
+            public Variant<?> get(Object key)
+            {
+                return key instanceof String ? lookup((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key)
+            {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Entry<String, Variant<?>>> entrySet()
+            {
+                return new AbstractSet<>()
+                {
+                    @Override
+                    public Iterator<Entry<String, Variant<?>>> iterator()
+                    {
+                        return new OverlayIterator();
+                    }
+
+                    @Override
+                    public int size()
+                    {
+                        int size = 0;
+                        for (Variant<?> variant : hints.values())
+                        {
+                            if (variant != REMOVED)
+                            {
+                                size++;
+                            }
+                        }
+                        for (String key : template.hints.keySet())
+                        {
+                            if (!hints.containsKey(key))
+                            {
+                                size++;
+                            }
+                        }
+                        return size;
+                    }
+                };
+            }
+
+        }
+
+        private final class OverlayIterator implements Iterator<Map.Entry<String, Variant<?>>>
+        {
+
+            private Iterator<Map.Entry<String, Variant<?>>> current = hints.entrySet().iterator();
+
+            private boolean inTemplate;
+
+            private Map.Entry<String, Variant<?>> next = advance();
+
+            private Map.Entry<String, Variant<?>> advance()
+            {
+                while (true)
+                {
+                    while (this.current.hasNext())
+                    {
+                        Map.Entry<String, Variant<?>> entry = this.current.next();
+                        if (this.inTemplate ? !hints.containsKey(entry.getKey()) : entry.getValue() != REMOVED)
+                        {
+                            return entry;
+                        }
+                    }
+                    if (this.inTemplate)
+                    {
+                        return null;
+                    }
+                    this.inTemplate = true;
+                    this.current = template.hints.entrySet().iterator();
+                }
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return this.next != null;
+            }
+
+            @Override
+            public Map.Entry<String, Variant<?>> next()
+            {
+                if (this.next == null)
+                {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, Variant<?>> entry = this.next;
+                this.next = advance();
+                return entry;
+            }
+
+        }
+
     }
 
     @Getter
@@ -438,6 +733,11 @@ public interface Notifications extends DBusInterface
          */
         public static final HintKey<String> X_KDE_DISPLAY_APPNAME = new HintKey<>(Capabilities.X_KDE_DISPLAY_APPNAME, String.class, -1);
 
+        /**
+         * Undocumented. A progress percentage between 0 and 100, displayed as a progress bar by KDE and others.
+         */
+        public static final HintKey<Integer> VALUE = new HintKey<>("value", int.class, -1);
+
         private final String key;
 
         private final Class<T> type;
@@ -446,35 +746,182 @@ public interface Notifications extends DBusInterface
 
     }
 
+    /**
+     * Pixel data for the "image-data" hint, marshalled as (iiibiiay).
+     * <p/>
+     * Pixels are kept as the bytes sent on the wire, so wrapping an existing RGB(A) buffer costs no copy.
+     */
+    @Getter
     class RawImage extends Struct
     {
 
+        @Position(0)
         private final int width;
 
+        @Position(1)
         private final int height;
 
+        @Position(2)
         private final int stride;
 
+        @Position(3)
         private final boolean hasAlpha;
 
-        private final int bitsPerSamble;
+        @Position(4)
+        private final int bitsPerSample;
 
+        @Position(5)
         private final int channels;
 
-        private final long[] data;
+        @Position(6)
+        private final byte[] data;
 
         public RawImage(
-                int width, int height, int stride, boolean hasAlpha, int bitsPerSamble, int channels, long[] data)
+                int width, int height, int stride, boolean hasAlpha, int bitsPerSample, int channels, byte[] data)
         {
+            if (data.length < (long) stride * (height - 1) + (long) width * channels * (bitsPerSample / 8))
+            {
+                throw new IllegalArgumentException("data is too small for a " + width + "x" + height + " image");
+            }
             this.width = width;
             this.height = height;
             this.stride = stride;
             this.hasAlpha = hasAlpha;
-            this.bitsPerSamble = bitsPerSamble;
+            this.bitsPerSample = bitsPerSample;
             this.channels = channels;
             this.data = data;
         }
 
+        /**
+         * Wraps tightly packed 8-bit RGBA, or RGB when {@code hasAlpha} is false, without copying it.
+         */
+        public static RawImage fromRgba(int width, int height, boolean hasAlpha, byte[] data)
+        {
+            int channels = hasAlpha ? 4 : 3;
+            return new RawImage(width, height, width * channels, hasAlpha, 8, channels, data);
+        }
+
+        /**
+         * Uses 8-bit RGBA, or RGB when {@code hasAlpha} is false, with rows {@code stride} bytes apart.
+         * <p/>
+         * A heap buffer covering its whole backing array is wrapped without copying, any other buffer is copied once.
+         */
+        public static RawImage fromRgba(int width, int height, int stride, boolean hasAlpha, ByteBuffer data)
+        {
+            byte[] bytes;
+            if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0
+                    && data.remaining() == data.array().length)
+            {
+                bytes = data.array();
+            } else
+            {
+                bytes = new byte[data.remaining()];
+                data.duplicate().get(bytes);
+            }
+            int channels = hasAlpha ? 4 : 3;
+            return new RawImage(width, height, stride, hasAlpha, 8, channels, bytes);
+        }
+
+        /**
+         * Converts packed 0xAARRGGBB pixels, such as those of {@link BufferedImage#TYPE_INT_ARGB}, in a single pass.
+         */
+        public static RawImage fromArgb(int width, int height, int[] argb)
+        {
+            return fromArgb(width, height, argb, 0, width, true);
+        }
+
+        private static RawImage fromArgb(int width, int height, int[] argb, int offset, int scanline, boolean hasAlpha)
+        {
+            int channels = hasAlpha ? 4 : 3;
+            int stride = width * channels;
+            byte[] data = new byte[stride * height];
+            int out = 0;
+            for (int y = 0; y < height; y++)
+            {
+                int in = offset + (y * scanline);
+                for (int x = 0; x < width; x++)
+                {
+                    int pixel = argb[in + x];
+                    data[out++] = (byte) (pixel >> 16);
+                    data[out++] = (byte) (pixel >> 8);
+                    data[out++] = (byte) pixel;
+                    if (hasAlpha)
+                    {
+                        data[out++] = (byte) (pixel >>> 24);
+                    }
+                }
+            }
+            return new RawImage(width, height, stride, hasAlpha, 8, channels, data);
+        }
+
+        /**
+         * Converts the image to 8-bit RGBA, or RGB for opaque images.
+         * <p/>
+         * Integer RGB rasters are read directly, other image types are read a row at a time.
+         */
+        public static RawImage fromBufferedImage(BufferedImage image)
+        {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            boolean hasAlpha = image.getColorModel().hasAlpha();
+            WritableRaster raster = image.getRaster();
+            int type = image.getType();
+            if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                    && raster.getDataBuffer() instanceof DataBufferInt
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            {
+                DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+                int scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+                int offset = buffer.getOffset()
+                        - (raster.getSampleModelTranslateY() * scanline)
+                        - raster.getSampleModelTranslateX();
+                return fromArgb(width, height, buffer.getData(), offset, scanline, hasAlpha);
+            }
+            int channels = hasAlpha ? 4 : 3;
+            int stride = width * channels;
+            byte[] data = new byte[stride * height];
+            int[] row = new int[width];
+            int out = 0;
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int pixel : row)
+                {
+                    data[out++] = (byte) (pixel >> 16);
+                    data[out++] = (byte) (pixel >> 8);
+                    data[out++] = (byte) pixel;
+                    if (hasAlpha)
+                    {
+                        data[out++] = (byte) (pixel >>> 24);
+                    }
+                }
+            }
+            return new RawImage(width, height, stride, hasAlpha, 8, channels, data);
+        }
+
+        /**
+         * Rebuilds an image from the fields of a (iiibiiay) struct as received from the bus, which may deliver the
+         * pixels as a list of bytes.
+         */
+        static RawImage fromFields(Object[] fields)
+        {
+            byte[] data;
+            if (fields[6] instanceof byte[])
+            {
+                data = (byte[]) fields[6];
+            } else
+            {
+                List<?> pixels = (List<?>) fields[6];
+                data = new byte[pixels.size()];
+                for (int i = 0; i < data.length; i++)
+                {
+                    data[i] = (Byte) pixels.get(i);
+                }
+            }
+            return new RawImage((Integer) fields[0], (Integer) fields[1], (Integer) fields[2], (Boolean) fields[3],
+                    (Integer) fields[4], (Integer) fields[5], data);
+        }
+
     }
 
 
@@ -0,0 +1,274 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.RemoteInvocationHandler;
+import org.freedesktop.dbus.RemoteObject;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.CallbackHandler;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking client for {@link Notifications}.
+ * <p/>
+ * Calls are written to the connection without waiting for earlier replies, with at most {@link #getMaxInFlight()}
+ * calls awaiting a reply at any time. Calls beyond that window are queued and sent, in order, as replies arrive.
+ * Calls cancelled while they are queued are never sent.
+ */
+public class AsyncNotifications
+{
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 25_000;
+
+    static final Method NOTIFY = method("open",
+            String.class,
+            UInt32.class,
+            String.class,
+            String.class,
+            String.class,
+            Notifications.Actions.class,
+            Notifications.Hints.class,
+            int.class);
+
+    static final Method CLOSE_NOTIFICATION = method("close", UInt32.class);
+
+    static final Method GET_CAPABILITIES = method("getCapabilities");
+
+    static final Method GET_SERVER_INFORMATION = method("getServerInformation");
+
+    static final Method INHIBIT = method("inhibit", String.class, String.class, Notifications.Hints.class);
+
+    static final Method UN_INHIBIT = method("release", UInt32.class);
+
+    @Getter
+    private final AbstractConnection connection;
+
+    private final RemoteObject remote;
+
+    @Getter
+    private final int maxInFlight;
+
+    @Getter
+    private final long timeoutMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Counts the requests to drain the queue, only the caller which raises it from zero drains.
+     */
+    private final AtomicInteger drains = new AtomicInteger();
+
+    private final Queue<PendingCall<?>> queue = new ConcurrentLinkedQueue<>();
+
+    public AsyncNotifications(AbstractConnection connection)
+    {
+        this(connection, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public AsyncNotifications(AbstractConnection connection, int maxInFlight)
+    {
+        this(connection, Notifications.NAME, maxInFlight, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AsyncNotifications(AbstractConnection connection, String busName, int maxInFlight, long timeoutMillis)
+    {
+        if (maxInFlight < 1)
+        {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.connection = connection;
+        this.remote = new RemoteObject(busName, Notifications.OBJECT_PATH, Notifications.class, true);
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @see Notifications#open(String, UInt32, String, String, String, Notifications.Actions, Notifications.Hints, int)
+     */
+    public CompletableFuture<UInt32> open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Notifications.Actions actions,
+            Notifications.Hints hints,
+            int timeout)
+    {
+        return call(NOTIFY, app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+    }
+
+    /**
+     * @see Notifications#close(UInt32)
+     */
+    public CompletableFuture<Void> close(UInt32 id)
+    {
+        return call(CLOSE_NOTIFICATION, id);
+    }
+
+    /**
+     * @see Notifications#getCapabilities()
+     */
+    public CompletableFuture<String[]> getCapabilities()
+    {
+        return call(GET_CAPABILITIES);
+    }
+
+    /**
+     * @see Notifications#getServerInformation()
+     */
+    public CompletableFuture<Notifications.ServerInformation> getServerInformation()
+    {
+        return call(GET_SERVER_INFORMATION);
+    }
+
+    /**
+     * @see Notifications#inhibit(String, String, Notifications.Hints)
+     */
+    public CompletableFuture<UInt32> inhibit(String desktop_entry, String reason, Notifications.Hints hints)
+    {
+        return call(INHIBIT, desktop_entry, reason, hints);
+    }
+
+    /**
+     * @see Notifications#release(UInt32)
+     */
+    public CompletableFuture<Void> release(UInt32 cookie)
+    {
+        return call(UN_INHIBIT, cookie);
+    }
+
+    /**
+     * @return the number of calls sent and still awaiting a reply
+     */
+    public int getInFlight()
+    {
+        return this.inFlight.get();
+    }
+
+    /**
+     * @return the number of calls waiting for a free slot in the window
+     */
+    public int getQueued()
+    {
+        return this.queue.size();
+    }
+
+    private <T> CompletableFuture<T> call(Method method, Object... args)
+    {
+        PendingCall<T> call = new PendingCall<>(method, args);
+        this.queue.add(call);
+        drain();
+        return call;
+    }
+
+    /**
+     * Sends queued calls while the window has room. A call completed while it is being sent, such as one failing on a
+     * closed connection, asks the drain already running to go round again rather than draining recursively.
+     */
+    private void drain()
+    {
+        if (this.drains.getAndIncrement() != 0)
+        {
+            return;
+        }
+        int missed = 1;
+        do
+        {
+            // only the thread draining takes slots, so the window can't be overrun between the check and the send
+            while (this.inFlight.get() < this.maxInFlight)
+            {
+                PendingCall<?> call = this.queue.poll();
+                if (call == null)
+                {
+                    break;
+                }
+                if (call.isDone())
+                {
+                    // cancelled while queued
+                    continue;
+                }
+                this.inFlight.incrementAndGet();
+                call.send();
+            }
+            missed = this.drains.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void release()
+    {
+        this.inFlight.decrementAndGet();
+        drain();
+    }
+
+    private static Method method(String name, Class<?>... types)
+    {
+        try
+        {
+            return Notifications.class.getMethod(name, types);
+        } catch (NoSuchMethodException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private class PendingCall<T> extends CompletableFuture<T> implements CallbackHandler<T>
+    {
+
+        private final Method method;
+
+        private final Object[] args;
+
+        PendingCall(Method method, Object[] args)
+        {
+            this.method = method;
+            this.args = args;
+        }
+
+        void send()
+        {
+            whenComplete((result, error) -> release());
+            if (timeoutMillis > 0)
+            {
+                orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            try
+            {
+                RemoteInvocationHandler.executeRemoteMethod(remote,
+                        this.method,
+                        connection,
+                        RemoteInvocationHandler.CALL_TYPE_CALLBACK,
+                        this,
+                        this.args);
+            } catch (Throwable e)
+            {
+                // the caller draining the queue may be sending someone else's call, so nothing is thrown to it
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void handle(T result)
+        {
+            complete(result);
+        }
+
+        @Override
+        public void handleError(DBusExecutionException e)
+        {
+            completeExceptionally(e);
+        }
+
+    }
+
+}
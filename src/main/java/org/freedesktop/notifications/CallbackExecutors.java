@@ -0,0 +1,80 @@
+package org.freedesktop.notifications;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running listener callbacks away from the connection's signal thread.
+ */
+public final class CallbackExecutors
+{
+
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final MethodHandle VIRTUAL_THREAD_PER_TASK = findVirtualThreadPerTask();
+
+    private CallbackExecutors()
+    {
+    }
+
+    /**
+     * @return a virtual thread per task executor on Java 21 and later, otherwise {@link #newBoundedExecutor(int)}
+     * with {@link #DEFAULT_THREADS}
+     */
+    public static ExecutorService newCallbackExecutor()
+    {
+        if (VIRTUAL_THREAD_PER_TASK != null)
+        {
+            try
+            {
+                return (ExecutorService) VIRTUAL_THREAD_PER_TASK.invokeExact();
+            } catch (Throwable ignored)
+            {
+                // fall back to platform threads
+            }
+        }
+        return newBoundedExecutor(DEFAULT_THREADS);
+    }
+
+    /**
+     * @return a pool of daemon threads, which time out when idle
+     */
+    public static ExecutorService newBoundedExecutor(int threads)
+    {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "NotificationCallback-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static boolean isVirtualThreadsAvailable()
+    {
+        return VIRTUAL_THREAD_PER_TASK != null;
+    }
+
+    private static MethodHandle findVirtualThreadPerTask()
+    {
+        try
+        {
+            return MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+
+}
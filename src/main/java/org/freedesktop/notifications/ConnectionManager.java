@@ -0,0 +1,227 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one connection, and one proxy per remote object, between every component of a process.
+ * <p/>
+ * The connection is opened by the first {@link #acquire()} and disconnected when the last {@link Lease} is closed,
+ * so components don't need to coordinate their lifecycles. A connection that was lost is replaced by the next
+ * {@link #acquire()}, while the leases already holding it keep it until they are closed.
+ * <pre>
+ * try (ConnectionManager.Lease lease = ConnectionManager.session().acquire())
+ * {
+ *     lease.getNotifications().open(...);
+ * }
+ * </pre>
+ */
+public class ConnectionManager
+{
+
+    private static final ConnectionManager SESSION = new ConnectionManager(
+            () -> DBusConnectionBuilder.forSessionBus().withShared(false).build());
+
+    private final ConnectionFactory factory;
+
+    private Shared current;
+
+    private int leases;
+
+    public ConnectionManager(ConnectionFactory factory)
+    {
+        this.factory = factory;
+    }
+
+    /**
+     * @return the manager of the session bus connection shared by the whole process
+     */
+    public static ConnectionManager session()
+    {
+        return SESSION;
+    }
+
+    /**
+     * Opens the connection unless another lease holds it.
+     */
+    public synchronized Lease acquire() throws DBusException
+    {
+        if (this.current == null || !this.current.connection.isConnected())
+        {
+            // leases of a lost connection keep it until they are closed
+            this.current = new Shared(this.factory.connect());
+        }
+        this.current.leases++;
+        this.leases++;
+        return new Lease(this.current);
+    }
+
+    /**
+     * @return the number of leases which have not been closed
+     */
+    public synchronized int getLeases()
+    {
+        return this.leases;
+    }
+
+    private synchronized void release(Shared shared)
+    {
+        this.leases--;
+        if (--shared.leases == 0)
+        {
+            shared.proxies.clear();
+            shared.connection.disconnect();
+            if (this.current == shared)
+            {
+                this.current = null;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ConnectionFactory
+    {
+        DBusConnection connect() throws DBusException;
+    }
+
+    /**
+     * A reference to the shared connection, which must be closed once the component no longer needs it.
+     */
+    public final class Lease implements AutoCloseable
+    {
+
+        private final Shared shared;
+
+        private boolean closed;
+
+        private Lease(Shared shared)
+        {
+            this.shared = shared;
+        }
+
+        public DBusConnection getConnection()
+        {
+            checkOpen();
+            return this.shared.connection;
+        }
+
+        /**
+         * @return the proxy of the remote object, created once per connection
+         */
+        public <T extends DBusInterface> T getRemoteObject(String busName, String objectPath, Class<T> type)
+                throws DBusException
+        {
+            checkOpen();
+            ProxyKey key = new ProxyKey(busName, objectPath, type);
+            DBusInterface proxy = this.shared.proxies.get(key);
+            if (proxy == null)
+            {
+                proxy = this.shared.connection.getRemoteObject(busName, objectPath, type);
+                DBusInterface existing = this.shared.proxies.putIfAbsent(key, proxy);
+                if (existing != null)
+                {
+                    proxy = existing;
+                }
+            }
+            return type.cast(proxy);
+        }
+
+        public Notifications getNotifications() throws DBusException
+        {
+            return getRemoteObject(Notifications.NAME, Notifications.OBJECT_PATH, Notifications.class);
+        }
+
+        /**
+         * Releases the connection, disconnecting it if this was the last lease. Closing twice has no effect.
+         */
+        @Override
+        public void close()
+        {
+            synchronized (ConnectionManager.this)
+            {
+                if (this.closed)
+                {
+                    return;
+                }
+                this.closed = true;
+                release(this.shared);
+            }
+        }
+
+        private void checkOpen()
+        {
+            synchronized (ConnectionManager.this)
+            {
+                if (this.closed)
+                {
+                    throw new IllegalStateException("Lease is closed");
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A connection and its proxies, shared by the leases acquired while it was connected.
+     */
+    private static final class Shared
+    {
+
+        private final DBusConnection connection;
+
+        private final Map<ProxyKey, DBusInterface> proxies = new ConcurrentHashMap<>();
+
+        private int leases;
+
+        Shared(DBusConnection connection)
+        {
+            this.connection = connection;
+        }
+
+    }
+
+    private static final class ProxyKey
+    {
+
+        private final String busName;
+
+        private final String objectPath;
+
+        private final Class<?> type;
+
+        ProxyKey(String busName, String objectPath, Class<?> type)
+        {
+            this.busName = busName;
+            this.objectPath = objectPath;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof ProxyKey))
+            {
+                return false;
+            }
+            ProxyKey other = (ProxyKey) o;
+            return this.busName.equals(other.busName)
+                    && this.objectPath.equals(other.objectPath)
+                    && this.type == other.type;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.busName, this.objectPath, this.type);
+        }
+
+    }
+
+}
@@ -0,0 +1,732 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rewrites the summary and body of notifications to suit the capabilities of a server, so callers can write the
+ * body once, in the markup of the specification, instead of building variants for each server.
+ * <p/>
+ * Bodies are read as markup in a single pass without backtracking. Without {@link Notifications.Capabilities#BODY}
+ * the body is dropped. Without {@link Notifications.Capabilities#BODY_MARKUP} tags are stripped and entities decoded.
+ * Otherwise {@code <b>}, {@code <i>} and {@code <u>} are kept, links only with
+ * {@link Notifications.Capabilities#BODY_HYPERLINKS} and images only with
+ * {@link Notifications.Capabilities#BODY_IMAGES}, other tags are stripped, stray {@code <}, {@code >} and
+ * {@code &} are escaped and open tags are closed. An image which is not kept is replaced by its alt text, and
+ * {@code <br>} by a line break. Tags end at the first {@code >}, even inside a quoted attribute.
+ * <p/>
+ * Text beyond the length limit is cut off and replaced by {@link #ELLIPSIS}. Adapted bodies are remembered, so a
+ * body sent again costs one lookup.
+ *
+ * @see ServerCapabilities#getContentAdapter()
+ */
+public class ContentAdapter
+{
+
+    public static final int DEFAULT_MEMO_SIZE = 256;
+
+    /**
+     * Longer bodies are not remembered.
+     */
+    public static final int MAX_MEMO_LENGTH = 4096;
+
+    public static final String ELLIPSIS = "\u2026";
+
+    /**
+     * Tags nested deeper than this are stripped.
+     */
+    private static final int MAX_DEPTH = 32;
+
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    private static final byte OTHER = 0;
+
+    private static final byte BOLD = 1;
+
+    private static final byte ITALIC = 2;
+
+    private static final byte UNDERLINE = 3;
+
+    private static final byte LINK = 4;
+
+    private static final byte IMAGE = 5;
+
+    private static final byte BREAK = 6;
+
+    private static final String[] TAG_NAMES = {null, "b", "i", "u", "a", "img", "br"};
+
+    @Getter
+    private final boolean body;
+
+    @Getter
+    private final boolean markup;
+
+    @Getter
+    private final boolean hyperlinks;
+
+    @Getter
+    private final boolean images;
+
+    @Getter
+    private final int maxSummaryLength;
+
+    @Getter
+    private final int maxBodyLength;
+
+    private final Map<String, String> memo;
+
+    public ContentAdapter(Collection<String> capabilities)
+    {
+        this(capabilities, 0, 0, DEFAULT_MEMO_SIZE);
+    }
+
+    /**
+     * @param maxSummaryLength the most characters of the summary kept, 0 for no limit
+     * @param maxBodyLength    the most characters of text in the body kept, not counting markup, 0 for no limit
+     * @param memoSize         the number of adapted bodies remembered
+     */
+    public ContentAdapter(Collection<String> capabilities, int maxSummaryLength, int maxBodyLength, int memoSize)
+    {
+        this.body = capabilities.contains(Notifications.Capabilities.BODY);
+        this.markup = capabilities.contains(Notifications.Capabilities.BODY_MARKUP);
+        // links and images are markup themselves
+        this.hyperlinks = this.markup && capabilities.contains(Notifications.Capabilities.BODY_HYPERLINKS);
+        this.images = this.markup && capabilities.contains(Notifications.Capabilities.BODY_IMAGES);
+        this.maxSummaryLength = maxSummaryLength;
+        this.maxBodyLength = maxBodyLength;
+        this.memo = new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > memoSize;
+            }
+        };
+    }
+
+    /**
+     * @return the notification with its summary and body adapted, or the same notification if neither changed
+     */
+    public Notification adapt(Notification notification)
+    {
+        String summary = adaptSummary(notification.getSummary());
+        String body = adaptBody(notification.getBody());
+        if (summary == notification.getSummary() && body == notification.getBody())
+        {
+            return notification;
+        }
+        return notification.toBuilder().summary(summary).body(body).build();
+    }
+
+    /**
+     * Summaries are plain text on a single line, so line breaks become spaces.
+     *
+     * @return the summary, the same instance if it was a string which needed no change
+     */
+    public String adaptSummary(CharSequence summary)
+    {
+        StringBuilder out = new StringBuilder(summary.length());
+        Pass pass = new Pass(out, false, this.maxSummaryLength);
+        for (int i = 0, length = summary.length(); i < length && !pass.truncated; i++)
+        {
+            char c = summary.charAt(i);
+            pass.text(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return toString(summary, out);
+    }
+
+    /**
+     * @param body markup, as described by the specification
+     * @return the body, the same instance if it was a string which needed no change
+     */
+    public String adaptBody(CharSequence body)
+    {
+        if (!this.body)
+        {
+            return "";
+        }
+        String key = body instanceof String && body.length() <= MAX_MEMO_LENGTH ? (String) body : null;
+        if (key != null)
+        {
+            synchronized (this.memo)
+            {
+                String adapted = this.memo.get(key);
+                if (adapted != null)
+                {
+                    return adapted;
+                }
+            }
+        }
+        StringBuilder out = new StringBuilder(body.length() + 16);
+        adaptBody(body, out);
+        String adapted = toString(body, out);
+        if (key != null)
+        {
+            synchronized (this.memo)
+            {
+                this.memo.put(key, adapted);
+            }
+        }
+        return adapted;
+    }
+
+    /**
+     * Adapts the body without remembering it.
+     *
+     * @param body markup, as described by the specification
+     */
+    public void adaptBody(CharSequence body, StringBuilder out)
+    {
+        if (!this.body)
+        {
+            return;
+        }
+        Pass pass = new Pass(out, this.markup, this.maxBodyLength);
+        int length = body.length();
+        int lastClose = lastIndexOf(body, '>');
+        int i = 0;
+        while (i < length && !pass.truncated)
+        {
+            if (body.charAt(i) == '<' && i < lastClose)
+            {
+                int end = tagEnd(body, i + 1, lastClose);
+                if (end >= 0)
+                {
+                    tag(body, i + 1, end, pass);
+                    i = end + 1;
+                    continue;
+                }
+            }
+            i = pass.text(body, i, length);
+        }
+        pass.finish();
+    }
+
+    /**
+     * Adapts text which has no markup, escaping it if the server reads markup.
+     */
+    public String adaptPlainBody(CharSequence body)
+    {
+        if (!this.body)
+        {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(body.length() + 16);
+        Pass pass = new Pass(out, this.markup, this.maxBodyLength);
+        for (int i = 0, length = body.length(); i < length && !pass.truncated; i++)
+        {
+            pass.text(body.charAt(i));
+        }
+        return toString(body, out);
+    }
+
+    /**
+     * @return the number of adapted bodies remembered
+     */
+    public int getMemoSize()
+    {
+        synchronized (this.memo)
+        {
+            return this.memo.size();
+        }
+    }
+
+    private void tag(CharSequence in, int from, int end, Pass pass)
+    {
+        boolean closing = in.charAt(from) == '/';
+        int nameStart = closing ? from + 1 : from;
+        int nameEnd = nameStart;
+        while (nameEnd < end && isNameChar(in.charAt(nameEnd)))
+        {
+            nameEnd++;
+        }
+        byte tag = tagCode(in, nameStart, nameEnd);
+        switch (tag)
+        {
+            case BOLD:
+            case ITALIC:
+            case UNDERLINE:
+                if (this.markup)
+                {
+                    if (closing)
+                    {
+                        pass.close(tag);
+                    } else
+                    {
+                        pass.open(tag, in, -1);
+                    }
+                }
+                break;
+            case LINK:
+                if (this.hyperlinks)
+                {
+                    if (closing)
+                    {
+                        pass.close(tag);
+                    } else
+                    {
+                        long href = attribute(in, nameEnd, end, "href");
+                        if (href >= 0)
+                        {
+                            pass.open(tag, in, href);
+                        }
+                    }
+                }
+                break;
+            case IMAGE:
+                if (!closing)
+                {
+                    long alt = attribute(in, nameEnd, end, "alt");
+                    if (this.images)
+                    {
+                        long src = attribute(in, nameEnd, end, "src");
+                        if (src >= 0)
+                        {
+                            pass.image(in, src, alt);
+                        }
+                    } else if (alt >= 0)
+                    {
+                        for (int i = start(alt), altEnd = end(alt); i < altEnd && !pass.truncated; )
+                        {
+                            i = pass.text(in, i, altEnd);
+                        }
+                    }
+                }
+                break;
+            case BREAK:
+                pass.text('\n');
+                break;
+            default:
+                // unknown to the specification, so no server renders it
+        }
+    }
+
+    /**
+     * @return the index of the {@code >} ending the tag, or -1 if the {@code <} is not the start of one
+     */
+    private static int tagEnd(CharSequence in, int from, int lastClose)
+    {
+        char first = in.charAt(from);
+        if (!Character.isLetter(first) && first != '/')
+        {
+            return -1;
+        }
+        for (int i = from; i <= lastClose; i++)
+        {
+            char c = in.charAt(i);
+            if (c == '>')
+            {
+                return i;
+            }
+            // so no character is looked at more than twice
+            if (c == '<')
+            {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static byte tagCode(CharSequence in, int from, int to)
+    {
+        for (byte tag = BOLD; tag < TAG_NAMES.length; tag++)
+        {
+            if (regionEquals(in, from, to, TAG_NAMES[tag]))
+            {
+                return tag;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * @return the start of the value in the high half and its end in the low half, or -1 if the tag does not have
+     * the attribute
+     */
+    private static long attribute(CharSequence in, int from, int end, String name)
+    {
+        int i = from;
+        while (i < end)
+        {
+            while (i < end && !isNameChar(in.charAt(i)))
+            {
+                i++;
+            }
+            int nameStart = i;
+            while (i < end && isNameChar(in.charAt(i)))
+            {
+                i++;
+            }
+            int nameEnd = i;
+            while (i < end && Character.isWhitespace(in.charAt(i)))
+            {
+                i++;
+            }
+            int valueStart = i;
+            int valueEnd = i;
+            if (i < end && in.charAt(i) == '=')
+            {
+                i++;
+                while (i < end && Character.isWhitespace(in.charAt(i)))
+                {
+                    i++;
+                }
+                char quote = i < end ? in.charAt(i) : 0;
+                if (quote == '"' || quote == '\'')
+                {
+                    valueStart = ++i;
+                    while (i < end && in.charAt(i) != quote)
+                    {
+                        i++;
+                    }
+                    valueEnd = i;
+                    i++;
+                } else
+                {
+                    valueStart = i;
+                    while (i < end && !Character.isWhitespace(in.charAt(i)))
+                    {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+            }
+            if (nameEnd > nameStart && regionEquals(in, nameStart, nameEnd, name))
+            {
+                return (long) valueStart << 32 | valueEnd;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the {@code ;} ending the entity, or -1 if the {@code &} does not start one
+     */
+    private static int entityEnd(CharSequence in, int from, int length)
+    {
+        for (int i = from, end = Math.min(length, from + MAX_ENTITY_LENGTH); i < end; i++)
+        {
+            char c = in.charAt(i);
+            if (c == ';')
+            {
+                return i;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#')
+            {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the character the entity between {@code &} and {@code ;} stands for, or -1 if markup parsers do not
+     * accept it
+     */
+    private static int decode(CharSequence in, int from, int to)
+    {
+        if (from < to && in.charAt(from) == '#')
+        {
+            int i = from + 1;
+            int radix = 10;
+            if (i < to && (in.charAt(i) == 'x' || in.charAt(i) == 'X'))
+            {
+                radix = 16;
+                i++;
+            }
+            if (i == to)
+            {
+                return -1;
+            }
+            int codePoint = 0;
+            for (; i < to; i++)
+            {
+                int digit = Character.digit(in.charAt(i), radix);
+                if (digit < 0 || (codePoint = codePoint * radix + digit) > Character.MAX_CODE_POINT)
+                {
+                    return -1;
+                }
+            }
+            return codePoint == 0 || Character.getType(codePoint) == Character.SURROGATE ? -1 : codePoint;
+        }
+        if (regionEquals(in, from, to, "amp"))
+        {
+            return '&';
+        } else if (regionEquals(in, from, to, "lt"))
+        {
+            return '<';
+        } else if (regionEquals(in, from, to, "gt"))
+        {
+            return '>';
+        } else if (regionEquals(in, from, to, "quot"))
+        {
+            return '"';
+        } else if (regionEquals(in, from, to, "apos"))
+        {
+            return '\'';
+        }
+        return -1;
+    }
+
+    private static boolean isNameChar(char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == ':';
+    }
+
+    private static boolean regionEquals(CharSequence in, int from, int to, String name)
+    {
+        if (to - from != name.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++)
+        {
+            if (Character.toLowerCase(in.charAt(from + i)) != name.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lastIndexOf(CharSequence in, char c)
+    {
+        for (int i = in.length() - 1; i >= 0; i--)
+        {
+            if (in.charAt(i) == c)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int start(long range)
+    {
+        return (int) (range >>> 32);
+    }
+
+    private static int end(long range)
+    {
+        return (int) range;
+    }
+
+    /**
+     * @return the input itself if it is a string equal to the output, so unchanged text is not copied
+     */
+    private static String toString(CharSequence in, StringBuilder out)
+    {
+        if (in instanceof String && ((String) in).contentEquals(out))
+        {
+            return (String) in;
+        }
+        return out.toString();
+    }
+
+    /**
+     * The output of one adaptation: escapes text for markup, counts it against the limit and keeps the tags open.
+     */
+    private static final class Pass
+    {
+
+        private final StringBuilder out;
+
+        private final boolean markup;
+
+        private final byte[] open = new byte[MAX_DEPTH];
+
+        private int depth;
+
+        /**
+         * Characters of text still allowed, or -1 for no limit.
+         */
+        private int remaining;
+
+        private boolean truncated;
+
+        Pass(StringBuilder out, boolean markup, int limit)
+        {
+            this.out = out;
+            this.markup = markup;
+            this.remaining = limit > 0 ? limit : -1;
+        }
+
+        /**
+         * Writes the character or entity at the index.
+         *
+         * @return the index after it
+         */
+        int text(CharSequence in, int i, int length)
+        {
+            char c = in.charAt(i);
+            if (c == '&')
+            {
+                int semicolon = entityEnd(in, i + 1, length);
+                int codePoint = semicolon < 0 ? -1 : decode(in, i + 1, semicolon);
+                if (codePoint >= 0)
+                {
+                    if (count())
+                    {
+                        if (this.markup)
+                        {
+                            this.out.append(in, i, semicolon + 1);
+                        } else
+                        {
+                            this.out.appendCodePoint(codePoint);
+                        }
+                    }
+                    return semicolon + 1;
+                }
+            }
+            text(c);
+            return i + 1;
+        }
+
+        void text(char c)
+        {
+            if (!count())
+            {
+                return;
+            }
+            if (!this.markup)
+            {
+                this.out.append(c);
+                return;
+            }
+            switch (c)
+            {
+                case '&':
+                    this.out.append("&amp;");
+                    break;
+                case '<':
+                    this.out.append("&lt;");
+                    break;
+                case '>':
+                    this.out.append("&gt;");
+                    break;
+                default:
+                    this.out.append(c);
+            }
+        }
+
+        /**
+         * @return false once the limit is reached, after appending the ellipsis
+         */
+        private boolean count()
+        {
+            if (this.remaining == 0)
+            {
+                if (!this.truncated)
+                {
+                    this.out.append(ELLIPSIS);
+                    this.truncated = true;
+                }
+                return false;
+            }
+            if (this.remaining > 0)
+            {
+                this.remaining--;
+            }
+            return true;
+        }
+
+        /**
+         * @param href the range of the link target, for {@link #LINK}
+         */
+        void open(byte tag, CharSequence in, long href)
+        {
+            if (this.depth == MAX_DEPTH)
+            {
+                return;
+            }
+            this.open[this.depth++] = tag;
+            this.out.append('<').append(TAG_NAMES[tag]);
+            if (href >= 0)
+            {
+                this.out.append(" href=\"");
+                attribute(in, href);
+                this.out.append('"');
+            }
+            this.out.append('>');
+        }
+
+        /**
+         * Closes the tag and any opened within it; a tag which is not open is ignored.
+         */
+        void close(byte tag)
+        {
+            for (int i = this.depth - 1; i >= 0; i--)
+            {
+                if (this.open[i] == tag)
+                {
+                    while (this.depth > i)
+                    {
+                        this.out.append("</").append(TAG_NAMES[this.open[--this.depth]]).append('>');
+                    }
+                    return;
+                }
+            }
+        }
+
+        void image(CharSequence in, long src, long alt)
+        {
+            this.out.append("<img src=\"");
+            attribute(in, src);
+            if (alt >= 0)
+            {
+                this.out.append("\" alt=\"");
+                attribute(in, alt);
+            }
+            this.out.append("\"/>");
+        }
+
+        /**
+         * Writes an attribute value for use between double quotes, keeping the entities markup parsers accept.
+         */
+        private void attribute(CharSequence in, long range)
+        {
+            for (int i = start(range), end = end(range); i < end; i++)
+            {
+                char c = in.charAt(i);
+                if (c == '&')
+                {
+                    int semicolon = entityEnd(in, i + 1, end);
+                    if (semicolon >= 0 && decode(in, i + 1, semicolon) >= 0)
+                    {
+                        this.out.append(in, i, semicolon + 1);
+                        i = semicolon;
+                    } else
+                    {
+                        this.out.append("&amp;");
+                    }
+                } else if (c == '<')
+                {
+                    this.out.append("&lt;");
+                } else if (c == '>')
+                {
+                    this.out.append("&gt;");
+                } else if (c == '"')
+                {
+                    this.out.append("&quot;");
+                } else
+                {
+                    this.out.append(c);
+                }
+            }
+        }
+
+        void finish()
+        {
+            while (this.depth > 0)
+            {
+                this.out.append("</").append(TAG_NAMES[this.open[--this.depth]]).append('>');
+            }
+        }
+
+    }
+
+}
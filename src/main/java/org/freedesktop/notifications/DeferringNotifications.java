@@ -0,0 +1,336 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Holds back notifications while the server is inhibited, rather than sending notifications it would not show.
+ * <p/>
+ * While the {@link InhibitionTracker} reports the server inhibited, notifications other than
+ * {@link Notifications.Urgency#CRITICAL} ones are not sent. Each one only adds a line to a {@link Digest}, so there
+ * is no bus traffic for them, and {@link #open} returns {@link #DEFERRED}. Transient notifications are dropped.
+ * Once the inhibition ends the digest is sent as a single notification. Critical notifications are always sent
+ * straight away.
+ */
+public class DeferringNotifications implements Notifications, AutoCloseable
+{
+
+    /**
+     * Returned by {@link #open} for a notification which was deferred; servers never give out this id.
+     */
+    public static final UInt32 DEFERRED = new UInt32(0);
+
+    public static final int DEFAULT_MAX_LINES = 5;
+
+    private static final ContentAdapter MARKUP = new ContentAdapter(
+            Arrays.asList(Capabilities.BODY, Capabilities.BODY_MARKUP));
+
+    @Getter
+    private final Notifications delegate;
+
+    @Getter
+    private final InhibitionTracker tracker;
+
+    private final int maxLines;
+
+    private final Function<Digest, Notification> summarizer;
+
+    private final InhibitionTracker.Listener listener = this::onInhibitedChanged;
+
+    private Digest digest;
+
+    private long dropped;
+
+    /**
+     * Sends digests made by {@link #summarize(Digest, ContentAdapter)} for the capabilities of the server at the time.
+     */
+    public DeferringNotifications(Notifications delegate, InhibitionTracker tracker)
+    {
+        this(delegate, tracker, DEFAULT_MAX_LINES,
+                digest -> summarize(digest, new ContentAdapter(Arrays.asList(delegate.getCapabilities()))));
+    }
+
+    /**
+     * @param maxLines   the number of deferred notifications the digest keeps a line for, the latest ones
+     * @param summarizer builds the notification sent for the digest
+     */
+    public DeferringNotifications(
+            Notifications delegate,
+            InhibitionTracker tracker,
+            int maxLines,
+            Function<Digest, Notification> summarizer)
+    {
+        this.delegate = delegate;
+        this.tracker = tracker;
+        this.maxLines = maxLines;
+        this.summarizer = summarizer;
+        tracker.addListener(this.listener);
+    }
+
+    /**
+     * Summarizes the digest for a server which reads markup in the body, as most do.
+     *
+     * @see #summarize(Digest, ContentAdapter)
+     */
+    public static Notification summarize(Digest digest)
+    {
+        return summarize(digest, MARKUP);
+    }
+
+    /**
+     * Lists the latest lines of the digest in the body, under the name of the app if they all came from one.
+     *
+     * @param adapter escapes each line, which is plain text, if the server reads markup
+     */
+    public static Notification summarize(Digest digest, ContentAdapter adapter)
+    {
+        StringBuilder body = new StringBuilder();
+        for (String line : digest.lines)
+        {
+            if (body.length() > 0)
+            {
+                body.append('\n');
+            }
+            body.append(adapter.adaptPlainBody(line));
+        }
+        int more = digest.count - digest.lines.size();
+        if (more > 0)
+        {
+            body.append("\nand ").append(more).append(" more");
+        }
+        return Notification.builder()
+                .appName(digest.apps.size() == 1 ? digest.apps.keySet().iterator().next() : "")
+                .summary(digest.count == 1 ? "1 notification while inhibited"
+                        : digest.count + " notifications while inhibited")
+                .body(body.toString())
+                .build();
+    }
+
+    @Override
+    public UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Actions actions,
+            Hints hints,
+            int timeout)
+    {
+        Urgency urgency = hints.get(HintKey.URGENCY);
+        if (urgency != Urgency.CRITICAL)
+        {
+            synchronized (this)
+            {
+                // checked under the lock, so the digest is either sent after this or still waits for the next one
+                if (this.tracker.isInhibited())
+                {
+                    if (Boolean.TRUE.equals(hints.get(HintKey.TRANSIENT)))
+                    {
+                        this.dropped++;
+                    } else
+                    {
+                        if (this.digest == null)
+                        {
+                            this.digest = new Digest();
+                        }
+                        this.digest.add(app_name, summary, this.maxLines);
+                    }
+                    return DEFERRED;
+                }
+            }
+        }
+        return this.delegate.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+    }
+
+    @Override
+    public void close(UInt32 id)
+    {
+        if (!DEFERRED.equals(id))
+        {
+            this.delegate.close(id);
+        }
+    }
+
+    @Override
+    public String[] getCapabilities()
+    {
+        return this.delegate.getCapabilities();
+    }
+
+    @Override
+    public ServerInformation getServerInformation()
+    {
+        return this.delegate.getServerInformation();
+    }
+
+    /**
+     * Inhibits through the tracker, so notifications are deferred from now on.
+     */
+    @Override
+    public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+    {
+        return this.tracker.inhibit(desktop_entry, reason, hints);
+    }
+
+    @Override
+    public void release(UInt32 cookie)
+    {
+        this.tracker.release(cookie);
+    }
+
+    @Override
+    public String getObjectPath()
+    {
+        return this.delegate.getObjectPath();
+    }
+
+    /**
+     * @return the number of notifications in the digest waiting to be sent
+     */
+    public synchronized int getDeferred()
+    {
+        return this.digest == null ? 0 : this.digest.count;
+    }
+
+    /**
+     * @return the number of transient notifications dropped while inhibited
+     */
+    public synchronized long getDropped()
+    {
+        return this.dropped;
+    }
+
+    /**
+     * Sends the digest unless the server is inhibited or nothing was deferred.
+     *
+     * @return the id of the digest notification, or null if none was sent
+     */
+    public UInt32 flush()
+    {
+        Digest digest;
+        synchronized (this)
+        {
+            if (this.digest == null || this.tracker.isInhibited())
+            {
+                return null;
+            }
+            digest = this.digest;
+            this.digest = null;
+        }
+        try
+        {
+            return this.summarizer.apply(digest).send(this.delegate, DEFERRED);
+        } catch (RuntimeException e)
+        {
+            synchronized (this)
+            {
+                // kept for the next flush, ahead of anything deferred since
+                if (this.digest != null)
+                {
+                    digest.addAll(this.digest, this.maxLines);
+                }
+                this.digest = digest;
+            }
+            throw e;
+        }
+    }
+
+    private void onInhibitedChanged(boolean inhibited)
+    {
+        // the tracker may have changed again since, so its current state decides
+        if (!this.tracker.isInhibited())
+        {
+            try
+            {
+                flush();
+            } catch (RuntimeException e)
+            {
+                // the server went away rather than lifting the inhibition; kept for the next flush
+            }
+        }
+    }
+
+    /**
+     * Stops following the tracker. A digest still waiting is discarded.
+     */
+    @Override
+    public void close()
+    {
+        this.tracker.removeListener(this.listener);
+        synchronized (this)
+        {
+            this.digest = null;
+        }
+    }
+
+    /**
+     * What was deferred: how many notifications each app sent, and a line for each of the latest.
+     */
+    @Getter
+    @ToString
+    public static final class Digest
+    {
+
+        private int count;
+
+        private final Map<String, Integer> apps = new LinkedHashMap<>();
+
+        private final Deque<String> lines = new ArrayDeque<>();
+
+        void add(String appName, String summary, int maxLines)
+        {
+            this.count++;
+            this.apps.merge(appName, 1, Integer::sum);
+            if (maxLines > 0)
+            {
+                if (this.lines.size() >= maxLines)
+                {
+                    this.lines.removeFirst();
+                }
+                this.lines.addLast(appName.isEmpty() ? summary : appName + ": " + summary);
+            }
+        }
+
+        void addAll(Digest newer, int maxLines)
+        {
+            this.count += newer.count;
+            newer.apps.forEach((appName, count) -> this.apps.merge(appName, count, Integer::sum));
+            for (String line : newer.lines)
+            {
+                if (this.lines.size() >= maxLines)
+                {
+                    this.lines.removeFirst();
+                }
+                this.lines.addLast(line);
+            }
+        }
+
+        public Map<String, Integer> getApps()
+        {
+            return Collections.unmodifiableMap(this.apps);
+        }
+
+        /**
+         * @return the lines of the latest notifications, oldest first
+         */
+        public List<String> getLines()
+        {
+            return Collections.unmodifiableList(new ArrayList<>(this.lines));
+        }
+
+    }
+
+}
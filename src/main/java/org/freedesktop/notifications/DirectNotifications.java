@@ -0,0 +1,205 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link Notifications} without a reflective proxy: each method builds its {@link MethodCall} directly from fixed
+ * signatures and reads the reply's arguments by position.
+ * <p/>
+ * Creating one costs nothing beyond the connection, which suits short-lived tools that send a single notification,
+ * and it needs no reflection or proxy configuration under GraalVM native-image. Hints and actions are passed in their
+ * {@link Notifications.Hints#serialize()} form, so frozen templates are not copied, though they are still marshalled
+ * into each message.
+ */
+public class DirectNotifications implements Notifications
+{
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 25_000;
+
+    static final String NOTIFY_SIGNATURE = "susssasa{sv}i";
+
+    static final String CLOSE_NOTIFICATION_SIGNATURE = "u";
+
+    static final String INHIBIT_SIGNATURE = "ssa{sv}";
+
+    static final String UN_INHIBIT_SIGNATURE = "u";
+
+    private final AbstractConnection connection;
+
+    @Getter
+    private final String busName;
+
+    @Getter
+    private final long timeoutMillis;
+
+    public DirectNotifications(AbstractConnection connection)
+    {
+        this(connection, NAME, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public DirectNotifications(AbstractConnection connection, String busName, long timeoutMillis)
+    {
+        this.connection = connection;
+        this.busName = busName;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Actions actions,
+            Hints hints,
+            int timeout)
+    {
+        Object[] reply = call("Notify",
+                NOTIFY_SIGNATURE,
+                app_name,
+                replaces,
+                app_icon,
+                summary,
+                body,
+                actions.serialize()[0],
+                hints.serialize()[0],
+                timeout);
+        return (UInt32) reply[0];
+    }
+
+    @Override
+    public void close(UInt32 id)
+    {
+        call("CloseNotification", CLOSE_NOTIFICATION_SIGNATURE, id);
+    }
+
+    /**
+     * Closes the notifications with one round trip: every call is sent before waiting for the first reply.
+     *
+     * @return the number of calls which succeeded; servers reply with an error to ids which are no longer open
+     */
+    public int closeAll(Collection<UInt32> ids)
+    {
+        List<MethodCall> calls = new ArrayList<>(ids.size());
+        for (UInt32 id : ids)
+        {
+            MethodCall call = methodCall("CloseNotification", (byte) 0, CLOSE_NOTIFICATION_SIGNATURE, id);
+            this.connection.sendMessage(call);
+            calls.add(call);
+        }
+        int closed = 0;
+        for (MethodCall call : calls)
+        {
+            Message reply = call.getReply(this.timeoutMillis);
+            if (reply != null && !(reply instanceof org.freedesktop.dbus.errors.Error))
+            {
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Sends a {@code CloseNotification} call for each id with {@link Message.Flags#NO_REPLY_EXPECTED}, returning
+     * without waiting for anything. Whether each notification was closed is only known from the
+     * {@link Notifications.NotificationClosed} signal the server sends for it.
+     */
+    public void closeWithoutReply(Collection<UInt32> ids)
+    {
+        for (UInt32 id : ids)
+        {
+            this.connection.sendMessage(
+                    methodCall("CloseNotification", Message.Flags.NO_REPLY_EXPECTED, CLOSE_NOTIFICATION_SIGNATURE, id));
+        }
+    }
+
+    @Override
+    public String[] getCapabilities()
+    {
+        Object capabilities = call("GetCapabilities", null)[0];
+        if (capabilities instanceof List)
+        {
+            return ((List<?>) capabilities).toArray(new String[0]);
+        }
+        Object[] array = (Object[]) capabilities;
+        String[] copy = new String[array.length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    @Override
+    public ServerInformation getServerInformation()
+    {
+        Object[] reply = call("GetServerInformation", null);
+        return new ServerInformation((String) reply[0], (String) reply[1], (String) reply[2], (String) reply[3]);
+    }
+
+    @Override
+    public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+    {
+        return (UInt32) call("Inhibit", INHIBIT_SIGNATURE, desktop_entry, reason, hints.serialize()[0])[0];
+    }
+
+    @Override
+    public void release(UInt32 cookie)
+    {
+        call("UnInhibit", UN_INHIBIT_SIGNATURE, cookie);
+    }
+
+    @Override
+    public String getObjectPath()
+    {
+        return OBJECT_PATH;
+    }
+
+    /**
+     * @return the arguments of the reply
+     * @throws DBusExecutionException if the call failed or there was no reply in time
+     */
+    private Object[] call(String member, String signature, Object... args)
+    {
+        MethodCall call = methodCall(member, (byte) 0, signature, args);
+        this.connection.sendMessage(call);
+        Message reply = call.getReply(this.timeoutMillis);
+        if (reply == null)
+        {
+            throw new DBusExecutionException("No reply to " + member + " within " + this.timeoutMillis + "ms");
+        }
+        if (reply instanceof org.freedesktop.dbus.errors.Error)
+        {
+            ((org.freedesktop.dbus.errors.Error) reply).throwException();
+        }
+        try
+        {
+            Object[] parameters = reply.getParameters();
+            return parameters == null ? new Object[0] : parameters;
+        } catch (DBusException e)
+        {
+            throw new DBusExecutionException("Failed to read reply to " + member + ": " + e.getMessage());
+        }
+    }
+
+    private MethodCall methodCall(String member, byte flags, String signature, Object... args)
+    {
+        try
+        {
+            return new MethodCall(this.busName, OBJECT_PATH, NAME, member, flags, signature, args);
+        } catch (DBusException e)
+        {
+            throw new DBusExecutionException("Failed to construct outgoing method call: " + e.getMessage());
+        }
+    }
+
+}
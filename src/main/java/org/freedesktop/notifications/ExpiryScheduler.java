@@ -0,0 +1,315 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes notifications when their deadline passes, for servers which ignore the timeout given to
+ * {@link Notifications#open} or keep notifications until the user dismisses them.
+ * <p/>
+ * Deadlines are kept in a hashed timing wheel: each slot holds the notifications due in one tick, and a deadline
+ * further away than one turn of the wheel counts the turns it has to wait. Scheduling and cancelling are constant
+ * time however many notifications are waiting, and a single thread advances the wheel once per tick. The
+ * notifications due in the same tick are handed to the {@link Expirer} together, so they can be closed in one
+ * round trip.
+ * <p/>
+ * Deadlines are rounded up to the next tick. Once {@link #attach attached}, a notification which is closed by other
+ * means is forgotten without waiting for its deadline.
+ */
+public class ExpiryScheduler implements NotificationListener, AutoCloseable
+{
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final Expirer expirer;
+
+    private final long tickNanos;
+
+    private final Timeout[] wheel;
+
+    private final int mask;
+
+    private final long origin;
+
+    private final Map<UInt32, Timeout> timeouts = new HashMap<>();
+
+    private final List<AutoCloseable> handlers = new ArrayList<>(1);
+
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * The next tick to expire, counted from {@link #origin}.
+     */
+    private long tick;
+
+    public ExpiryScheduler(Expirer expirer)
+    {
+        this(expirer, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param wheelSize the number of slots, rounded up to a power of two; deadlines within {@code tickMillis *
+     *                  wheelSize} never wait for more than one turn
+     */
+    public ExpiryScheduler(Expirer expirer, long tickMillis, int wheelSize)
+    {
+        this(expirer, TimeUnit.MILLISECONDS.toNanos(tickMillis), wheelSize, System.nanoTime(), true);
+    }
+
+    ExpiryScheduler(Expirer expirer, long tickNanos, int wheelSize, long origin, boolean start)
+    {
+        if (tickNanos <= 0 || wheelSize <= 0 || wheelSize > 1 << 30)
+        {
+            throw new IllegalArgumentException("tick and wheel size must be positive");
+        }
+        this.expirer = expirer;
+        this.tickNanos = tickNanos;
+        int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Timeout[size];
+        for (int i = 0; i < size; i++)
+        {
+            this.wheel[i] = new Timeout(null);
+        }
+        this.mask = size - 1;
+        this.origin = origin;
+        if (start)
+        {
+            this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ExpiryScheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ticker.scheduleAtFixedRate(() -> advance(System.nanoTime()), tickNanos, tickNanos,
+                    TimeUnit.NANOSECONDS);
+        } else
+        {
+            this.ticker = null;
+        }
+    }
+
+    /**
+     * Closes each batch of expired notifications with {@link DirectNotifications#closeAll}, which waits for one round
+     * trip per batch; other implementations are closed one call at a time.
+     */
+    public static Expirer closing(Notifications notifications)
+    {
+        if (notifications instanceof DirectNotifications)
+        {
+            return ((DirectNotifications) notifications)::closeAll;
+        }
+        return ids -> {
+            for (UInt32 id : ids)
+            {
+                try
+                {
+                    notifications.close(id);
+                } catch (RuntimeException e)
+                {
+                    // the notification was closed before its deadline
+                }
+            }
+        };
+    }
+
+    /**
+     * Forgets notifications as soon as the server reports them closed.
+     */
+    public void attach(AbstractConnection connection) throws DBusException
+    {
+        this.handlers.add(connection.addSigHandler(Notifications.NotificationClosed.class, this::onClosed));
+    }
+
+    /**
+     * Closes the notification after the delay, replacing any deadline it already had.
+     */
+    public void schedule(UInt32 id, long delay, TimeUnit unit)
+    {
+        scheduleAt(id, System.nanoTime() + unit.toNanos(delay));
+    }
+
+    synchronized void scheduleAt(UInt32 id, long deadlineNanos)
+    {
+        Timeout timeout = this.timeouts.get(id);
+        if (timeout == null)
+        {
+            timeout = new Timeout(id);
+            this.timeouts.put(id, timeout);
+        } else
+        {
+            timeout.unlink();
+        }
+        long due = Math.max(this.tick, ceilDiv(deadlineNanos - this.origin, this.tickNanos));
+        timeout.rounds = (due - this.tick) >> Integer.numberOfTrailingZeros(this.wheel.length);
+        timeout.linkBefore(this.wheel[(int) (due & this.mask)]);
+    }
+
+    /**
+     * @return false if the notification had no deadline, or has already expired
+     */
+    public synchronized boolean cancel(UInt32 id)
+    {
+        Timeout timeout = this.timeouts.remove(id);
+        if (timeout == null)
+        {
+            return false;
+        }
+        timeout.unlink();
+        return true;
+    }
+
+    /**
+     * @return the number of notifications waiting for their deadline
+     */
+    public synchronized int size()
+    {
+        return this.timeouts.size();
+    }
+
+    @Override
+    public void onClosed(Notifications.NotificationClosed signal)
+    {
+        cancel(signal.getId());
+    }
+
+    /**
+     * Expires every tick up to the time given, passing the notifications due in each tick to the
+     * {@link Expirer} as one batch.
+     */
+    void advance(long nowNanos)
+    {
+        while (true)
+        {
+            List<UInt32> expired = new ArrayList<>();
+            synchronized (this)
+            {
+                if (Math.floorDiv(nowNanos - this.origin, this.tickNanos) < this.tick)
+                {
+                    return;
+                }
+                Timeout head = this.wheel[(int) (this.tick & this.mask)];
+                for (Timeout timeout = head.next; timeout != head; )
+                {
+                    Timeout next = timeout.next;
+                    if (timeout.rounds-- <= 0)
+                    {
+                        timeout.unlink();
+                        this.timeouts.remove(timeout.id);
+                        expired.add(timeout.id);
+                    }
+                    timeout = next;
+                }
+                this.tick++;
+            }
+            if (!expired.isEmpty())
+            {
+                try
+                {
+                    this.expirer.expire(expired);
+                } catch (RuntimeException e)
+                {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the wheel; deadlines which have not passed are dropped.
+     */
+    @Override
+    public void close()
+    {
+        if (this.ticker != null)
+        {
+            this.ticker.shutdownNow();
+        }
+        for (AutoCloseable handler : this.handlers)
+        {
+            try
+            {
+                handler.close();
+            } catch (Exception e)
+            {
+                // the connection is already gone
+            }
+        }
+        this.handlers.clear();
+        synchronized (this)
+        {
+            for (Timeout head : this.wheel)
+            {
+                head.next = head;
+                head.previous = head;
+            }
+            this.timeouts.clear();
+        }
+    }
+
+    private static long ceilDiv(long dividend, long divisor)
+    {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    @FunctionalInterface
+    public interface Expirer
+    {
+
+        /**
+         * Called from the scheduler's thread with the notifications whose deadline passed in the same tick.
+         */
+        void expire(List<UInt32> ids);
+
+    }
+
+    /**
+     * An entry in the doubly-linked list of a slot, so it can be unlinked without searching the slot. Each slot's
+     * list starts with a head that has no id.
+     */
+    private static final class Timeout
+    {
+
+        private final UInt32 id;
+
+        private Timeout previous = this;
+
+        private Timeout next = this;
+
+        private long rounds;
+
+        Timeout(UInt32 id)
+        {
+            this.id = id;
+        }
+
+        void linkBefore(Timeout head)
+        {
+            this.previous = head.previous;
+            this.next = head;
+            head.previous.next = this;
+            head.previous = this;
+        }
+
+        void unlink()
+        {
+            this.previous.next = this.next;
+            this.next.previous = this.previous;
+            this.previous = this;
+            this.next = this;
+        }
+
+    }
+
+}
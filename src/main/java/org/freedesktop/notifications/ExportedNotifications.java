@@ -0,0 +1,112 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.Tuple;
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.DBusMemberName;
+import org.freedesktop.dbus.annotations.Position;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.types.UInt32;
+
+/**
+ * The server side of {@link Notifications}, as exported by {@link NotificationServer}.
+ * <p/>
+ * dbus-java can't export {@link Notifications} directly because {@link Notifications.ServerInformation} isn't a
+ * parameterized {@link Tuple}. Once exported, signals received in the same JVM are created as the subclasses
+ * declared here, so they are still delivered to handlers of the {@link Notifications} signals.
+ */
+@DBusInterfaceName(Notifications.NAME)
+public interface ExportedNotifications extends DBusInterface
+{
+
+    @DBusMemberName("Notify")
+    UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Notifications.Actions actions,
+            Notifications.Hints hints,
+            int timeout);
+
+    @DBusMemberName("CloseNotification")
+    void close(UInt32 id);
+
+    @DBusMemberName("GetCapabilities")
+    String[] getCapabilities();
+
+    @DBusMemberName("GetServerInformation")
+    Information<String, String, String, String> getServerInformation();
+
+    @DBusMemberName("Inhibit")
+    UInt32 inhibit(String desktop_entry, String reason, Notifications.Hints hints);
+
+    @DBusMemberName("UnInhibit")
+    void release(UInt32 cookie);
+
+    /**
+     * The same structure as {@link Notifications.ServerInformation}
+     */
+    @Getter
+    class Information<A, B, C, D> extends Tuple
+    {
+
+        @Position(0)
+        private final A name;
+
+        @Position(1)
+        private final B vendor;
+
+        @Position(2)
+        private final C version;
+
+        @Position(3)
+        private final D specVersion;
+
+        public Information(A name, B vendor, C version, D specVersion)
+        {
+            this.name = name;
+            this.vendor = vendor;
+            this.version = version;
+            this.specVersion = specVersion;
+        }
+
+    }
+
+    class NotificationClosed extends Notifications.NotificationClosed
+    {
+        public NotificationClosed(String _objectPath, UInt32 id, UInt32 reason) throws DBusException
+        {
+            super(_objectPath, id, reason);
+        }
+    }
+
+    class ActionInvoked extends Notifications.ActionInvoked
+    {
+        public ActionInvoked(String _objectPath, UInt32 id, String action) throws DBusException
+        {
+            super(_objectPath, id, action);
+        }
+    }
+
+    class ActivationToken extends Notifications.ActivationToken
+    {
+        public ActivationToken(String _objectPath, UInt32 id, String token) throws DBusException
+        {
+            super(_objectPath, id, token);
+        }
+    }
+
+    @DBusMemberName("NotificationReplied")
+    class KdeNotificationReplied extends Notifications.KdeNotificationReplied
+    {
+        public KdeNotificationReplied(String _objectPath, UInt32 id, String message) throws DBusException
+        {
+            super(_objectPath, id, message);
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Content addressed store that lets repeated "image-data" hints be sent as a short "image-path" instead.
+ * <p/>
+ * Each distinct image is written once as a PNG in the cache directory, named after the SHA-256 of its pixels.
+ * The least recently used files are deleted once the cache exceeds its entry or byte budget.
+ * The server must be able to read the cache directory, so this is only useful with a local daemon.
+ * <p/>
+ * Image data must not be modified after an image has been stored, as digests are remembered per pixel array.
+ */
+public class ImageCache implements AutoCloseable
+{
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    @Getter
+    private final Path directory;
+
+    @Getter
+    private final int maxEntries;
+
+    @Getter
+    private final long maxBytes;
+
+    private final boolean ownsDirectory;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<byte[], String> digests = new WeakHashMap<>();
+
+    private long bytes;
+
+    /**
+     * Creates a cache in a new temporary directory which is deleted on {@link #close()}.
+     */
+    public ImageCache() throws IOException
+    {
+        this(Files.createTempDirectory("dbus-java-desktop-images"), DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, true);
+    }
+
+    public ImageCache(Path directory, int maxEntries, long maxBytes) throws IOException
+    {
+        this(Files.createDirectories(directory), maxEntries, maxBytes, false);
+    }
+
+    private ImageCache(Path directory, int maxEntries, long maxBytes, boolean ownsDirectory)
+    {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ownsDirectory = ownsDirectory;
+    }
+
+    /**
+     * Replaces {@link Notifications.HintKey#IMAGE_DATA} with {@link Notifications.HintKey#IMAGE_PATH} if the server
+     * implements a specification version that has the "image-path" hint.
+     *
+     * @return true if the hints were rewritten
+     */
+    public boolean apply(Notifications.Hints hints, ServerCapabilities server) throws IOException
+    {
+        if (!server.supports(Notifications.HintKey.IMAGE_PATH))
+        {
+            return false;
+        }
+        return apply(hints);
+    }
+
+    /**
+     * Replaces {@link Notifications.HintKey#IMAGE_DATA} with {@link Notifications.HintKey#IMAGE_PATH}.
+     *
+     * @return true if the hints were rewritten
+     */
+    public boolean apply(Notifications.Hints hints) throws IOException
+    {
+        Notifications.RawImage image = hints.get(Notifications.HintKey.IMAGE_DATA);
+        if (image == null || hints.contains(Notifications.HintKey.IMAGE_PATH))
+        {
+            return false;
+        }
+        hints.set(Notifications.HintKey.IMAGE_PATH, store(image));
+        hints.remove(Notifications.HintKey.IMAGE_DATA);
+        return true;
+    }
+
+    /**
+     * Writes the image to the cache if it is not already present.
+     *
+     * @return a file URI for the image
+     */
+    public synchronized String store(Notifications.RawImage image) throws IOException
+    {
+        String digest = this.digests.get(image.getData());
+        if (digest == null)
+        {
+            digest = digest(image);
+            this.digests.put(image.getData(), digest);
+        }
+        Entry entry = this.entries.get(digest);
+        if (entry != null && Files.exists(entry.path))
+        {
+            return entry.uri;
+        }
+        Path path = this.directory.resolve(digest + ".png");
+        long size = write(image, path);
+        if (entry != null)
+        {
+            this.bytes -= entry.size;
+        }
+        entry = new Entry(path, size);
+        this.entries.put(digest, entry);
+        this.bytes += size;
+        evict();
+        return entry.uri;
+    }
+
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the total size of the cached files
+     */
+    public synchronized long bytes()
+    {
+        return this.bytes;
+    }
+
+    private void evict()
+    {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        // the newest entry is never evicted, the server has not read it yet
+        while (this.entries.size() > 1 && (this.entries.size() > this.maxEntries || this.bytes > this.maxBytes))
+        {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            this.bytes -= eldest.size;
+            delete(eldest.path);
+        }
+    }
+
+    private static long write(Notifications.RawImage image, Path path) throws IOException
+    {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        if (!ImageIO.write(toBufferedImage(image), "png", png))
+        {
+            throw new IOException("No PNG writer available");
+        }
+        // written to a temporary file first so the server never sees a partial image
+        Path temp = Files.createTempFile(path.getParent(), ".image", ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(png.toByteArray());
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        } catch (IOException e)
+        {
+            delete(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return png.size();
+    }
+
+    static BufferedImage toBufferedImage(Notifications.RawImage image)
+    {
+        if (image.getBitsPerSample() != 8 || image.getChannels() < 3)
+        {
+            throw new IllegalArgumentException("Only 8-bit RGB and RGBA images are supported");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int channels = image.getChannels();
+        boolean alpha = image.isHasAlpha();
+        byte[] data = image.getData();
+        BufferedImage result = new BufferedImage(width,
+                height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            int in = y * image.getStride();
+            for (int x = 0; x < width; x++, in += channels)
+            {
+                int a = alpha ? data[in + 3] & 0xFF : 0xFF;
+                row[x] = (a << 24) | ((data[in] & 0xFF) << 16) | ((data[in + 1] & 0xFF) << 8) | (data[in + 2] & 0xFF);
+            }
+            result.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return result;
+    }
+
+    static String digest(Notifications.RawImage image)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer header = ByteBuffer.allocate(24);
+        header.putInt(image.getWidth())
+                .putInt(image.getHeight())
+                .putInt(image.getStride())
+                .putInt(image.isHasAlpha() ? 1 : 0)
+                .putInt(image.getBitsPerSample())
+                .putInt(image.getChannels());
+        digest.update(header.array());
+        digest.update(image.getData());
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest())
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void delete(Path path)
+    {
+        try
+        {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored)
+        {
+            // best effort, a stale file only costs disk space
+        }
+    }
+
+    /**
+     * Deletes every cached file, and the directory if it was created by this cache.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        for (Entry entry : this.entries.values())
+        {
+            Files.deleteIfExists(entry.path);
+        }
+        this.entries.clear();
+        this.digests.clear();
+        this.bytes = 0;
+        if (this.ownsDirectory)
+        {
+            Files.deleteIfExists(this.directory);
+        }
+    }
+
+    private static final class Entry
+    {
+
+        private final Path path;
+
+        private final String uri;
+
+        private final long size;
+
+        Entry(Path path, long size)
+        {
+            this.path = path;
+            this.uri = path.toUri().toString();
+            this.size = size;
+        }
+
+    }
+
+}
@@ -0,0 +1,262 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Follows whether the notification server is inhibited, such as while the user has do-not-disturb enabled.
+ * <p/>
+ * The server's {@link Notifications#INHIBITED} property is read once, then kept up to date from
+ * {@code PropertiesChanged} signals, so checking costs no bus traffic. Cookies taken through {@link #inhibit} count
+ * as well, even on servers without the property. When another process takes {@link Notifications#NAME}, the
+ * cookies are forgotten along with the previous server and the property is read again.
+ */
+public class InhibitionTracker implements AutoCloseable
+{
+
+    private final Notifications notifications;
+
+    private final String busName;
+
+    private final Properties properties;
+
+    private final Set<UInt32> cookies = ConcurrentHashMap.newKeySet();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<AutoCloseable> handlers = new ArrayList<>(2);
+
+    private volatile boolean serverInhibited;
+
+    private volatile boolean inhibited;
+
+    /**
+     * Changes not yet passed to the listeners, oldest first, and whether a thread is passing them on. Guarded by this.
+     */
+    private final Deque<Boolean> changes = new ArrayDeque<>();
+
+    private boolean delivering;
+
+    public InhibitionTracker(DBusConnection connection, Notifications notifications) throws DBusException
+    {
+        this(connection, Notifications.NAME, notifications);
+    }
+
+    InhibitionTracker(DBusConnection connection, String busName, Notifications notifications) throws DBusException
+    {
+        this.notifications = notifications;
+        this.busName = busName;
+        this.properties = connection.getRemoteObject(busName, Notifications.OBJECT_PATH, Properties.class);
+        this.handlers.add(connection.addSigHandler(Properties.PropertiesChanged.class, this::onPropertiesChanged));
+        this.handlers.add(connection.addSigHandler(DBus.NameOwnerChanged.class, this::onNameOwnerChanged));
+        this.serverInhibited = query();
+        update();
+    }
+
+    /**
+     * @return true while the server reports itself inhibited, or a cookie taken through this tracker is held
+     */
+    public boolean isInhibited()
+    {
+        return this.inhibited;
+    }
+
+    /**
+     * @return true while the server reports itself inhibited, by anyone
+     */
+    public boolean isServerInhibited()
+    {
+        return this.serverInhibited;
+    }
+
+    /**
+     * @return the cookies taken through this tracker and not yet released
+     */
+    public Set<UInt32> getCookies()
+    {
+        return Collections.unmodifiableSet(this.cookies);
+    }
+
+    public UInt32 inhibit(String desktopEntry, String reason, Notifications.Hints hints)
+    {
+        UInt32 cookie = this.notifications.inhibit(desktopEntry, reason, hints);
+        this.cookies.add(cookie);
+        update();
+        return cookie;
+    }
+
+    public void release(UInt32 cookie)
+    {
+        try
+        {
+            this.notifications.release(cookie);
+        } finally
+        {
+            // a server that has forgotten the cookie no longer inhibits for it either
+            if (this.cookies.remove(cookie))
+            {
+                update();
+            }
+        }
+    }
+
+    /**
+     * Listeners are called after the state has changed, one change at a time and in the order the changes were made.
+     * They run on the thread that made the change, or on one still passing on an earlier change, which may be one
+     * of the connection's signal threads.
+     */
+    public void addListener(Listener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    private void onPropertiesChanged(Properties.PropertiesChanged signal)
+    {
+        if (!Notifications.OBJECT_PATH.equals(signal.getPath())
+                || !Notifications.NAME.equals(signal.getInterfaceName()))
+        {
+            return;
+        }
+        Variant<?> value = signal.getPropertiesChanged().get(Notifications.INHIBITED);
+        if (value != null)
+        {
+            this.serverInhibited = Boolean.TRUE.equals(value.getValue());
+            update();
+        } else if (signal.getPropertiesRemoved().contains(Notifications.INHIBITED))
+        {
+            // invalidated without the new value
+            this.serverInhibited = query();
+            update();
+        }
+    }
+
+    private void onNameOwnerChanged(DBus.NameOwnerChanged signal)
+    {
+        if (this.busName.equals(signal.name))
+        {
+            this.cookies.clear();
+            this.serverInhibited = !signal.newOwner.isEmpty() && query();
+            update();
+        }
+    }
+
+    /**
+     * @return the server's property, or false if there is no server or it has no such property
+     */
+    private boolean query()
+    {
+        try
+        {
+            return Boolean.TRUE.equals(this.properties.Get(Notifications.NAME, Notifications.INHIBITED));
+        } catch (DBusExecutionException e)
+        {
+            return false;
+        }
+    }
+
+    private void update()
+    {
+        synchronized (this)
+        {
+            boolean inhibited = this.serverInhibited || !this.cookies.isEmpty();
+            if (inhibited == this.inhibited)
+            {
+                return;
+            }
+            this.inhibited = inhibited;
+            this.changes.addLast(inhibited);
+            if (this.delivering)
+            {
+                // passed on after the earlier changes by the thread delivering them
+                return;
+            }
+            this.delivering = true;
+        }
+        deliver();
+    }
+
+    /**
+     * Passes on the changes in order until none are left, so racing changes can't reach a listener out of order.
+     */
+    private void deliver()
+    {
+        boolean delivered = false;
+        try
+        {
+            while (true)
+            {
+                Boolean inhibited;
+                synchronized (this)
+                {
+                    inhibited = this.changes.pollFirst();
+                    if (inhibited == null)
+                    {
+                        this.delivering = false;
+                        delivered = true;
+                        return;
+                    }
+                }
+                for (Listener listener : this.listeners)
+                {
+                    listener.onInhibitedChanged(inhibited);
+                }
+            }
+        } finally
+        {
+            if (!delivered)
+            {
+                synchronized (this)
+                {
+                    // a listener threw; the changes left are passed on with the next one
+                    this.delivering = false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (AutoCloseable handler : this.handlers)
+        {
+            try
+            {
+                handler.close();
+            } catch (Exception e)
+            {
+                // the connection is already gone
+            }
+        }
+        this.handlers.clear();
+        this.listeners.clear();
+    }
+
+    @FunctionalInterface
+    public interface Listener
+    {
+
+        void onInhibitedChanged(boolean inhibited);
+
+    }
+
+}
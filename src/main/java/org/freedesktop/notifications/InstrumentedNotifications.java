@@ -0,0 +1,132 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.function.Supplier;
+
+/**
+ * Reports the latency, failures and payload of every call to a {@link Notifications} proxy.
+ * <p/>
+ * Pass the same {@link NotificationMetrics} to {@link NotificationSignals} to count the signals received.
+ */
+public class InstrumentedNotifications implements Notifications
+{
+
+    @Getter
+    private final Notifications delegate;
+
+    @Getter
+    private final NotificationMetrics metrics;
+
+    public InstrumentedNotifications(Notifications delegate, NotificationMetrics metrics)
+    {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Actions actions,
+            Hints hints,
+            int timeout)
+    {
+        if (!this.metrics.isEnabled())
+        {
+            return this.delegate.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+        }
+        RawImage image = hints.get(HintKey.IMAGE_DATA);
+        this.metrics.payload(hints.keys().size(),
+                actions.getActions().size(),
+                image == null ? 0 : image.getData().length);
+        return measure(NotificationMetrics.Method.NOTIFY,
+                () -> this.delegate.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout));
+    }
+
+    @Override
+    public void close(UInt32 id)
+    {
+        if (!this.metrics.isEnabled())
+        {
+            this.delegate.close(id);
+            return;
+        }
+        measure(NotificationMetrics.Method.CLOSE_NOTIFICATION, () -> {
+            this.delegate.close(id);
+            return null;
+        });
+    }
+
+    @Override
+    public String[] getCapabilities()
+    {
+        if (!this.metrics.isEnabled())
+        {
+            return this.delegate.getCapabilities();
+        }
+        return measure(NotificationMetrics.Method.GET_CAPABILITIES, this.delegate::getCapabilities);
+    }
+
+    @Override
+    public ServerInformation getServerInformation()
+    {
+        if (!this.metrics.isEnabled())
+        {
+            return this.delegate.getServerInformation();
+        }
+        return measure(NotificationMetrics.Method.GET_SERVER_INFORMATION, this.delegate::getServerInformation);
+    }
+
+    @Override
+    public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+    {
+        if (!this.metrics.isEnabled())
+        {
+            return this.delegate.inhibit(desktop_entry, reason, hints);
+        }
+        return measure(NotificationMetrics.Method.INHIBIT, () -> this.delegate.inhibit(desktop_entry, reason, hints));
+    }
+
+    @Override
+    public void release(UInt32 cookie)
+    {
+        if (!this.metrics.isEnabled())
+        {
+            this.delegate.release(cookie);
+            return;
+        }
+        measure(NotificationMetrics.Method.UN_INHIBIT, () -> {
+            this.delegate.release(cookie);
+            return null;
+        });
+    }
+
+    @Override
+    public String getObjectPath()
+    {
+        return this.delegate.getObjectPath();
+    }
+
+    private <T> T measure(NotificationMetrics.Method method, Supplier<T> call)
+    {
+        this.metrics.started(method);
+        long start = System.nanoTime();
+        try
+        {
+            T result = call.get();
+            this.metrics.completed(method, System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException | Error e)
+        {
+            this.metrics.completed(method, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+/**
+ * Records every notification opened or closed through a {@link Notifications} proxy in a
+ * {@link NotificationJournal}, after the call has returned.
+ */
+public class JournalingNotifications implements Notifications
+{
+
+    @Getter
+    private final Notifications delegate;
+
+    @Getter
+    private final NotificationJournal journal;
+
+    public JournalingNotifications(Notifications delegate, NotificationJournal journal)
+    {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    @Override
+    public UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Actions actions,
+            Hints hints,
+            int timeout)
+    {
+        UInt32 id = this.delegate.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+        if (!id.equals(replaces) && replaces.longValue() != 0)
+        {
+            // the replaced notification had already gone, the server opened a new one
+            this.journal.closed(replaces, CloseReason.UNDEFINED);
+        }
+        this.journal.opened(id, Notification.builder()
+                .appName(app_name)
+                .appIcon(app_icon)
+                .summary(summary)
+                .body(body)
+                .actions(actions)
+                .hints(hints)
+                .timeout(timeout)
+                .build());
+        return id;
+    }
+
+    @Override
+    public void close(UInt32 id)
+    {
+        this.delegate.close(id);
+        this.journal.closed(id, CloseReason.CLOSED);
+    }
+
+    @Override
+    public String[] getCapabilities()
+    {
+        return this.delegate.getCapabilities();
+    }
+
+    @Override
+    public ServerInformation getServerInformation()
+    {
+        return this.delegate.getServerInformation();
+    }
+
+    @Override
+    public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+    {
+        return this.delegate.inhibit(desktop_entry, reason, hints);
+    }
+
+    @Override
+    public void release(UInt32 cookie)
+    {
+        this.delegate.release(cookie);
+    }
+
+    @Override
+    public String getObjectPath()
+    {
+        return this.delegate.getObjectPath();
+    }
+
+}
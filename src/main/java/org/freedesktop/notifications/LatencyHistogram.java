@@ -0,0 +1,88 @@
+package org.freedesktop.notifications;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, with buckets no wider than an eighth of their lower bound.
+ * <p/>
+ * Values below 8 are recorded exactly; larger values are bucketed by their three most significant bits after the
+ * highest set bit, so percentiles are reported to within 12.5%.
+ */
+public class LatencyHistogram
+{
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+
+    public void record(long value)
+    {
+        this.counts.incrementAndGet(index(Math.max(0, value)));
+    }
+
+    public long getCount()
+    {
+        long count = 0;
+        for (int i = 0; i < this.counts.length(); i++)
+        {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket containing the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] snapshot = new long[this.counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            snapshot[i] = this.counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank)
+            {
+                return highest(i);
+            }
+        }
+        return highest(snapshot.length - 1);
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS) + sub;
+    }
+
+    static long highest(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int exponent = (index / SUB_BUCKETS) + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (SUB_BUCKETS + (index % SUB_BUCKETS)) * width;
+        return lowest + width - 1;
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.freedesktop.notifications;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+/**
+ * The arguments of a {@link Notifications#open} call, other than the id being replaced.
+ */
+@Getter
+@ToString
+@Builder(toBuilder = true)
+public class Notification
+{
+
+    @Builder.Default
+    private final String appName = "";
+
+    @Builder.Default
+    private final String appIcon = "";
+
+    @Builder.Default
+    private final String summary = "";
+
+    @Builder.Default
+    private final String body = "";
+
+    @Builder.Default
+    private final Notifications.Actions actions = new Notifications.Actions();
+
+    @Builder.Default
+    private final Notifications.Hints hints = new Notifications.Hints();
+
+    /**
+     * Milliseconds before the notification expires, 0 to never expire or -1 for the server default.
+     */
+    @Builder.Default
+    private final int timeout = -1;
+
+    /**
+     * @return the urgency hint, or {@link Notifications.Urgency#NORMAL} if it is not set
+     */
+    public Notifications.Urgency getUrgency()
+    {
+        Notifications.Urgency urgency = this.hints.get(Notifications.HintKey.URGENCY);
+        return urgency == null ? Notifications.Urgency.NORMAL : urgency;
+    }
+
+    public UInt32 send(Notifications notifications, UInt32 replaces)
+    {
+        return notifications.open(this.appName,
+                replaces,
+                this.appIcon,
+                this.summary,
+                this.body,
+                this.actions,
+                this.hints,
+                this.timeout);
+    }
+
+}
@@ -0,0 +1,394 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Sends the same notification to many buses at once, such as the session bus of every user logged in to a
+ * terminal server.
+ * <p/>
+ * Each bus gets its own connection, opened the first time it is needed and reopened if it is lost. Calls to all the
+ * buses are in flight together, up to the concurrency limit, so a broadcast takes about one round trip rather than
+ * one per bus. The notification's actions and hints are frozen once and shared by every call rather than copied,
+ * though each call still marshals them into its own message.
+ * <p/>
+ * The list of buses is read again before each broadcast; connections to buses which have gone away are closed.
+ * Connecting to another user's session bus needs the permission to do so, typically running as root.
+ * <pre>
+ * try (NotificationBroadcaster broadcaster = new NotificationBroadcaster())
+ * {
+ *     NotificationBroadcaster.Result&lt;UInt32&gt; result = broadcaster.broadcast(notification).join();
+ * }
+ * </pre>
+ */
+public class NotificationBroadcaster implements AutoCloseable
+{
+
+    public static final Path RUNTIME_DIRECTORY = Paths.get("/run/user");
+
+    public static final int DEFAULT_CONCURRENCY = 64;
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    private final Supplier<? extends Collection<String>> addresses;
+
+    private final Connector connector;
+
+    @Getter
+    private final int concurrency;
+
+    private final ExecutorService connecting;
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    /**
+     * Broadcasts to the session buses under {@link #RUNTIME_DIRECTORY}.
+     */
+    public NotificationBroadcaster()
+    {
+        this(() -> discover(RUNTIME_DIRECTORY), DEFAULT_CONCURRENCY,
+                address -> DBusConnectionBuilder.forAddress(address).withShared(false).build());
+    }
+
+    /**
+     * @param addresses   the addresses of the buses, read before each broadcast
+     * @param concurrency the most buses with a call in flight, or being connected to, at any time
+     */
+    public NotificationBroadcaster(Supplier<? extends Collection<String>> addresses, int concurrency,
+            Connector connector)
+    {
+        if (concurrency < 1)
+        {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.addresses = addresses;
+        this.concurrency = concurrency;
+        this.connector = connector;
+        this.connecting = CallbackExecutors.newBoundedExecutor(
+                Math.min(concurrency, CallbackExecutors.DEFAULT_THREADS));
+    }
+
+    /**
+     * @return the address of each {@code <uid>/bus} socket in the runtime directory, in order
+     */
+    public static List<String> discover(Path runtimeDirectory)
+    {
+        List<String> addresses = new ArrayList<>();
+        try (DirectoryStream<Path> users = Files.newDirectoryStream(runtimeDirectory))
+        {
+            for (Path user : users)
+            {
+                Path bus = user.resolve("bus");
+                try
+                {
+                    // sockets are neither files nor directories
+                    if (Files.readAttributes(bus, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther())
+                    {
+                        addresses.add("unix:path=" + bus);
+                    }
+                } catch (IOException e)
+                {
+                    // no bus, or one we may not see
+                }
+            }
+        } catch (NoSuchFileException e)
+        {
+            return addresses;
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(addresses);
+        return addresses;
+    }
+
+    /**
+     * Reads the addresses again, forgetting the buses which are no longer listed.
+     *
+     * @return the addresses of the buses the next broadcast will reach
+     */
+    public synchronized Set<String> refresh()
+    {
+        Set<String> current = new HashSet<>(this.addresses.get());
+        this.targets.values().removeIf(target -> {
+            if (current.contains(target.address))
+            {
+                return false;
+            }
+            target.disconnect();
+            return true;
+        });
+        for (String address : current)
+        {
+            this.targets.computeIfAbsent(address, Target::new);
+        }
+        return Collections.unmodifiableSet(current);
+    }
+
+    /**
+     * @return the id the notification was given on each bus, and the reason it could not be sent to the others
+     */
+    public CompletableFuture<Result<UInt32>> broadcast(Notification notification)
+    {
+        Notifications.Actions actions = notification.getActions().freeze();
+        Notifications.Hints hints = notification.getHints().freeze();
+        return forEach((address, notifications) -> notifications.open(notification.getAppName(),
+                NO_REPLACE,
+                notification.getAppIcon(),
+                notification.getSummary(),
+                notification.getBody(),
+                actions,
+                hints,
+                notification.getTimeout()));
+    }
+
+    /**
+     * Closes the notifications a broadcast opened.
+     */
+    public CompletableFuture<Result<Void>> closeAll(Result<UInt32> broadcast)
+    {
+        Map<String, UInt32> ids = broadcast.getValues();
+        return forEach((address, notifications) -> {
+            UInt32 id = ids.get(address);
+            return id == null ? CompletableFuture.completedFuture(null) : notifications.close(id);
+        });
+    }
+
+    /**
+     * Makes a call on every bus, with at most {@link #getConcurrency()} in progress.
+     */
+    public <T> CompletableFuture<Result<T>> forEach(
+            BiFunction<String, AsyncNotifications, CompletableFuture<T>> call)
+    {
+        refresh();
+        return new Fanout<>(new ArrayList<>(this.targets.values()), call).start();
+    }
+
+    /**
+     * Disconnects from every bus.
+     */
+    @Override
+    public synchronized void close()
+    {
+        for (Target target : this.targets.values())
+        {
+            target.disconnect();
+        }
+        this.targets.clear();
+        this.connecting.shutdown();
+    }
+
+    private static Throwable unwrap(Throwable error)
+    {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    @FunctionalInterface
+    public interface Connector
+    {
+        DBusConnection connect(String address) throws DBusException;
+    }
+
+    /**
+     * The outcome of a call made on many buses, by address.
+     */
+    @Getter
+    @ToString
+    public static final class Result<T>
+    {
+
+        /**
+         * The result of the call on each bus where it succeeded.
+         */
+        private final Map<String, T> values = new ConcurrentHashMap<>();
+
+        /**
+         * Why the call failed, or the bus could not be reached, on the others.
+         */
+        private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+
+    }
+
+    /**
+     * Starts a call on the next bus whenever one finishes, until every bus has been called.
+     * <p/>
+     * Calls which finish while the next ones are being started, such as those to buses with nothing to do, hand their
+     * slot back to the loop already starting calls instead of starting the next call themselves.
+     */
+    private final class Fanout<T>
+    {
+
+        private final List<Target> targets;
+
+        private final BiFunction<String, AsyncNotifications, CompletableFuture<T>> call;
+
+        private final Result<T> result = new Result<>();
+
+        private final CompletableFuture<Result<T>> done = new CompletableFuture<>();
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private final AtomicInteger free;
+
+        private final AtomicInteger drains = new AtomicInteger();
+
+        private final AtomicInteger remaining;
+
+        Fanout(List<Target> targets, BiFunction<String, AsyncNotifications, CompletableFuture<T>> call)
+        {
+            this.targets = targets;
+            this.call = call;
+            this.free = new AtomicInteger(Math.min(concurrency, targets.size()));
+            this.remaining = new AtomicInteger(targets.size());
+        }
+
+        CompletableFuture<Result<T>> start()
+        {
+            if (this.targets.isEmpty())
+            {
+                this.done.complete(this.result);
+            }
+            drain();
+            return this.done;
+        }
+
+        private void drain()
+        {
+            if (this.drains.getAndIncrement() != 0)
+            {
+                return;
+            }
+            int missed = 1;
+            do
+            {
+                // only the thread draining takes slots and targets
+                while (this.free.get() > 0 && this.next.get() < this.targets.size())
+                {
+                    this.free.decrementAndGet();
+                    call(this.targets.get(this.next.getAndIncrement()));
+                }
+                missed = this.drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void call(Target target)
+        {
+            CompletableFuture<T> call;
+            try
+            {
+                call = target.notifications()
+                        .thenCompose(notifications -> this.call.apply(target.address, notifications));
+            } catch (RuntimeException e)
+            {
+                // such as the pool refusing to connect once the broadcaster is closed
+                call = CompletableFuture.failedFuture(e);
+            }
+            call.whenComplete((value, error) -> {
+                if (error == null)
+                {
+                    if (value != null)
+                    {
+                        this.result.values.put(target.address, value);
+                    }
+                } else
+                {
+                    this.result.failures.put(target.address, unwrap(error));
+                }
+                if (this.remaining.decrementAndGet() == 0)
+                {
+                    this.done.complete(this.result);
+                } else
+                {
+                    this.free.incrementAndGet();
+                    drain();
+                }
+            });
+        }
+
+    }
+
+    private final class Target
+    {
+
+        private final String address;
+
+        private DBusConnection connection;
+
+        private AsyncNotifications notifications;
+
+        Target(String address)
+        {
+            this.address = address;
+        }
+
+        /**
+         * @return the client for this bus, connecting on the pool if there is no live connection
+         */
+        synchronized CompletableFuture<AsyncNotifications> notifications()
+        {
+            if (this.connection != null && this.connection.isConnected())
+            {
+                return CompletableFuture.completedFuture(this.notifications);
+            }
+            return CompletableFuture.supplyAsync(this::connect, connecting);
+        }
+
+        private synchronized AsyncNotifications connect()
+        {
+            if (this.connection == null || !this.connection.isConnected())
+            {
+                disconnect();
+                try
+                {
+                    this.connection = connector.connect(this.address);
+                } catch (DBusException e)
+                {
+                    throw new CompletionException(e);
+                }
+                this.notifications = new AsyncNotifications(this.connection);
+            }
+            return this.notifications;
+        }
+
+        synchronized void disconnect()
+        {
+            if (this.connection != null)
+            {
+                this.connection.disconnect();
+                this.connection = null;
+                this.notifications = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,235 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Opens notifications as {@link NotificationHandle}s which can be updated in place, closed and awaited.
+ * <p/>
+ * Handles are tracked through weak references, and at most {@link #getMaxTracked()} open notifications are tracked
+ * at once. When the limit is exceeded the oldest is no longer tracked, and its {@link NotificationHandle#closed()}
+ * future fails. A notification whose handle has been collected is no longer tracked either, unless its future still
+ * has dependents, and its future is cancelled. Closing the client fails the future of every notification still
+ * tracked.
+ */
+public class NotificationClient implements AutoCloseable
+{
+
+    public static final int DEFAULT_MAX_TRACKED = 1024;
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    @Getter
+    private final Notifications notifications;
+
+    private final NotificationSignals signals;
+
+    private final boolean ownsSignals;
+
+    @Getter
+    private final int maxTracked;
+
+    private final ReferenceQueue<NotificationHandle> collected = new ReferenceQueue<>();
+
+    private final Map<UInt32, Tracker> tracked = new LinkedHashMap<>();
+
+    public NotificationClient(AbstractConnection connection, Notifications notifications) throws DBusException
+    {
+        this(notifications, new NotificationSignals(connection), DEFAULT_MAX_TRACKED, true);
+    }
+
+    public NotificationClient(Notifications notifications, NotificationSignals signals, int maxTracked)
+    {
+        this(notifications, signals, maxTracked, false);
+    }
+
+    private NotificationClient(
+            Notifications notifications, NotificationSignals signals, int maxTracked, boolean ownsSignals)
+    {
+        this.notifications = notifications;
+        this.signals = signals;
+        this.maxTracked = maxTracked;
+        this.ownsSignals = ownsSignals;
+    }
+
+    public NotificationHandle open(Notification notification)
+    {
+        purge();
+        try (NotificationSignals.Reservation ignored = this.signals.reserve())
+        {
+            UInt32 id = notification.send(this.notifications, NO_REPLACE);
+            CompletableFuture<Notifications.CloseReason> closed = new CompletableFuture<>();
+            NotificationHandle handle = new NotificationHandle(this, id, notification, closed);
+            track(new Tracker(id, handle, closed, this.collected));
+            return handle;
+        }
+    }
+
+    /**
+     * @return the number of notifications currently tracked
+     */
+    public synchronized int size()
+    {
+        return this.tracked.size();
+    }
+
+    UInt32 replace(NotificationHandle handle, UInt32 replaced, Notification notification)
+    {
+        try (NotificationSignals.Reservation ignored = this.signals.reserve())
+        {
+            UInt32 id = notification.send(this.notifications, replaced);
+            synchronized (this)
+            {
+                Tracker current = this.tracked.get(id);
+                if (current != null && current.get() == handle)
+                {
+                    return id;
+                }
+            }
+            // the server allocates a new id when the replaced notification has already gone, and a notification
+            // closed or no longer tracked while it was being replaced is open again
+            Tracker previous = untrack(replaced);
+            CompletableFuture<Notifications.CloseReason> closed = previous != null && !previous.closed.isDone()
+                    ? previous.closed
+                    : handle.reopen();
+            track(new Tracker(id, handle, closed, this.collected));
+            return id;
+        }
+    }
+
+    private synchronized void track(Tracker tracker)
+    {
+        this.tracked.put(tracker.id, tracker);
+        this.signals.register(tracker.id, tracker);
+        Iterator<Tracker> iterator = this.tracked.values().iterator();
+        while (this.tracked.size() > this.maxTracked)
+        {
+            Tracker eldest = iterator.next();
+            iterator.remove();
+            this.signals.unregister(eldest.id, eldest);
+            eldest.closed.completeExceptionally(new IllegalStateException(
+                    "Notification " + eldest.id + " is no longer tracked"));
+        }
+    }
+
+    private synchronized Tracker untrack(UInt32 id)
+    {
+        Tracker tracker = this.tracked.remove(id);
+        if (tracker != null)
+        {
+            this.signals.unregister(id, tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Stops tracking notifications whose handles have been collected, unless someone still waits for them to close.
+     */
+    private void purge()
+    {
+        Reference<? extends NotificationHandle> reference;
+        while ((reference = this.collected.poll()) != null)
+        {
+            Tracker tracker = (Tracker) reference;
+            if (tracker.closed.getNumberOfDependents() == 0)
+            {
+                synchronized (this)
+                {
+                    if (this.tracked.remove(tracker.id, tracker))
+                    {
+                        this.signals.unregister(tracker.id, tracker);
+                    }
+                }
+                // whoever kept the future alone is told it will never learn how the notification closed
+                tracker.closed.completeExceptionally(new CancellationException(
+                        "Notification " + tracker.id + " is no longer tracked, its handle was collected"));
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        List<Tracker> trackers;
+        synchronized (this)
+        {
+            this.tracked.forEach(this.signals::unregister);
+            trackers = new ArrayList<>(this.tracked.values());
+            this.tracked.clear();
+        }
+        for (Tracker tracker : trackers)
+        {
+            tracker.closed.completeExceptionally(new IllegalStateException(
+                    "Notification " + tracker.id + " is no longer tracked, the client is closed"));
+        }
+        if (this.ownsSignals)
+        {
+            this.signals.close();
+        }
+    }
+
+    private final class Tracker extends WeakReference<NotificationHandle> implements NotificationListener
+    {
+
+        private final UInt32 id;
+
+        private final CompletableFuture<Notifications.CloseReason> closed;
+
+        Tracker(
+                UInt32 id,
+                NotificationHandle handle,
+                CompletableFuture<Notifications.CloseReason> closed,
+                ReferenceQueue<NotificationHandle> queue)
+        {
+            super(handle, queue);
+            this.id = id;
+            this.closed = closed;
+        }
+
+        @Override
+        public void onClosed(Notifications.NotificationClosed signal)
+        {
+            synchronized (NotificationClient.this)
+            {
+                tracked.remove(this.id, this);
+            }
+            this.closed.complete(Notifications.CloseReason.of(signal.getReason()));
+        }
+
+        @Override
+        public void onActionInvoked(Notifications.ActionInvoked signal)
+        {
+            NotificationHandle handle = get();
+            if (handle != null)
+            {
+                handle.actionInvoked(signal.getAction());
+            }
+        }
+
+        @Override
+        public void onReplied(Notifications.KdeNotificationReplied signal)
+        {
+            NotificationHandle handle = get();
+            if (handle != null)
+            {
+                handle.replied(signal.getMessage());
+            }
+        }
+
+    }
+
+}
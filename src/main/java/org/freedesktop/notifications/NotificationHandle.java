@@ -0,0 +1,137 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A notification opened through {@link NotificationClient}.
+ * <p/>
+ * Action and reply callbacks are only delivered while the handle is reachable, the client does not keep handles alive.
+ */
+public class NotificationHandle
+{
+
+    private final NotificationClient client;
+
+    @Getter
+    private volatile UInt32 id;
+
+    @Getter
+    private volatile Notification notification;
+
+    private volatile CompletableFuture<Notifications.CloseReason> closed;
+
+    private final List<Consumer<String>> actionListeners = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<String>> replyListeners = new CopyOnWriteArrayList<>();
+
+    NotificationHandle(
+            NotificationClient client,
+            UInt32 id,
+            Notification notification,
+            CompletableFuture<Notifications.CloseReason> closed)
+    {
+        this.client = client;
+        this.id = id;
+        this.notification = notification;
+        this.closed = closed;
+    }
+
+    /**
+     * Replaces the notification in place, keeping its position on screen.
+     */
+    public synchronized NotificationHandle update(Notification notification)
+    {
+        if (this.closed.isDone())
+        {
+            throw new IllegalStateException("Notification " + this.id + " is closed");
+        }
+        UInt32 replaced = this.id;
+        this.id = this.client.replace(this, replaced, notification);
+        this.notification = notification;
+        return this;
+    }
+
+    /**
+     * Replaces the notification with a modified copy of the current one.
+     */
+    public NotificationHandle update(UnaryOperator<Notification.NotificationBuilder> changes)
+    {
+        return update(changes.apply(this.notification.toBuilder()).build());
+    }
+
+    public NotificationHandle update(String summary, String body)
+    {
+        return update(builder -> builder.summary(summary).body(body));
+    }
+
+    public void close()
+    {
+        if (!this.closed.isDone())
+        {
+            this.client.getNotifications().close(this.id);
+        }
+    }
+
+    /**
+     * @param listener receives the identifier of each invoked action
+     */
+    public NotificationHandle onAction(Consumer<String> listener)
+    {
+        this.actionListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * @param listener receives each inline reply
+     * @see Notifications.Capabilities#X_KDE_INLINE_REPLY
+     */
+    public NotificationHandle onReply(Consumer<String> listener)
+    {
+        this.replyListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * @return a future completed with the reason given by {@link Notifications.NotificationClosed}
+     */
+    public CompletableFuture<Notifications.CloseReason> closed()
+    {
+        return this.closed;
+    }
+
+    public boolean isClosed()
+    {
+        return this.closed.isDone();
+    }
+
+    /**
+     * @return the future to complete when the notification closes, a new one if the current one is already done
+     */
+    synchronized CompletableFuture<Notifications.CloseReason> reopen()
+    {
+        if (this.closed.isDone())
+        {
+            this.closed = new CompletableFuture<>();
+        }
+        return this.closed;
+    }
+
+    void actionInvoked(String action)
+    {
+        this.actionListeners.forEach(listener -> listener.accept(action));
+    }
+
+    void replied(String message)
+    {
+        this.replyListeners.forEach(listener -> listener.accept(message));
+    }
+
+}
@@ -0,0 +1,470 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The notifications a server keeps until they are acknowledged, for servers with
+ * {@link Notifications.Capabilities#PERSISTENCE}.
+ * <p/>
+ * Notifications are indexed by id, app name, {@link Notifications.HintKey#CATEGORY} and
+ * {@link Notifications.HintKey#DESKTOP_ENTRY}, so listing or removing the notifications of an app costs time in
+ * proportion to the notifications returned rather than to the size of the history. The oldest notifications are
+ * evicted once the history holds more than its count, exceeds its byte budget, or once they are older than the
+ * maximum age. Images are budgeted separately from the rest of the notification, whose size is estimated, and only
+ * notifications with images are evicted to bring the images within their budget.
+ * <p/>
+ * Images of at least the spill threshold are copied out of the heap into direct buffers, and copied back when the
+ * notification is read, so large histories of images don't lengthen garbage collection.
+ */
+public class NotificationHistory
+{
+
+    public static final int DEFAULT_MAX_COUNT = 10_000;
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    public static final long DEFAULT_MAX_IMAGE_BYTES = 128L * 1024 * 1024;
+
+    public static final int DEFAULT_SPILL_THRESHOLD = 16 * 1024;
+
+    /**
+     * Approximate size of a record and its index entries, excluding the notification's contents.
+     */
+    private static final int RECORD_OVERHEAD = 256;
+
+    @Getter
+    private final int maxCount;
+
+    @Getter
+    private final long maxAgeMillis;
+
+    @Getter
+    private final long maxBytes;
+
+    @Getter
+    private final long maxImageBytes;
+
+    @Getter
+    private final int spillThreshold;
+
+    private final LongSupplier clock;
+
+    /**
+     * Records in the order they were put, oldest first.
+     */
+    private final LinkedHashMap<UInt32, Record> records = new LinkedHashMap<>();
+
+    private final Map<String, Set<Record>> byApp = new HashMap<>();
+
+    private final Map<String, Set<Record>> byCategory = new HashMap<>();
+
+    private final Map<String, Set<Record>> byDesktopEntry = new HashMap<>();
+
+    private long bytes;
+
+    private long imageBytes;
+
+    private long offHeapBytes;
+
+    public NotificationHistory()
+    {
+        this(DEFAULT_MAX_COUNT, DEFAULT_MAX_AGE_MILLIS, DEFAULT_MAX_BYTES, DEFAULT_MAX_IMAGE_BYTES,
+                DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param maxAgeMillis   how long notifications are kept, 0 to keep them until evicted by count or size
+     * @param spillThreshold the size from which images are kept off the heap, or -1 to keep them all on the heap
+     */
+    public NotificationHistory(int maxCount, long maxAgeMillis, long maxBytes, long maxImageBytes, int spillThreshold)
+    {
+        this(maxCount, maxAgeMillis, maxBytes, maxImageBytes, spillThreshold, System::currentTimeMillis);
+    }
+
+    NotificationHistory(
+            int maxCount,
+            long maxAgeMillis,
+            long maxBytes,
+            long maxImageBytes,
+            int spillThreshold,
+            LongSupplier clock)
+    {
+        this.maxCount = maxCount;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+        this.maxImageBytes = maxImageBytes;
+        this.spillThreshold = spillThreshold;
+        this.clock = clock;
+    }
+
+    /**
+     * Keeps the notification, replacing any kept under the same id, then evicts the oldest notifications until the
+     * history is within its limits again.
+     *
+     * @return the ids evicted, which may include this one if it alone exceeds a budget
+     */
+    public synchronized List<UInt32> put(UInt32 id, Notification notification)
+    {
+        removeRecord(this.records.get(id));
+        Record record = new Record(id, notification, this.clock.getAsLong(), this.spillThreshold);
+        this.records.put(id, record);
+        index(this.byApp, record.app, record);
+        index(this.byCategory, record.category, record);
+        index(this.byDesktopEntry, record.desktopEntry, record);
+        this.bytes += record.bytes;
+        this.imageBytes += record.imageBytes;
+        this.offHeapBytes += record.spilled == null ? 0 : record.imageBytes;
+        return evict();
+    }
+
+    /**
+     * @return the notification, with its image copied back onto the heap if it was spilled, or null
+     */
+    public synchronized Notification get(UInt32 id)
+    {
+        Record record = this.records.get(id);
+        return record == null ? null : record.restore();
+    }
+
+    public synchronized boolean contains(UInt32 id)
+    {
+        return this.records.containsKey(id);
+    }
+
+    /**
+     * @return true if the notification was kept
+     */
+    public synchronized boolean remove(UInt32 id)
+    {
+        return removeRecord(this.records.get(id));
+    }
+
+    /**
+     * @return the ids of the app's notifications, oldest first
+     */
+    public synchronized List<UInt32> getByApp(String appName)
+    {
+        return ids(this.byApp.get(appName));
+    }
+
+    public synchronized List<UInt32> getByCategory(String category)
+    {
+        return ids(this.byCategory.get(category));
+    }
+
+    public synchronized List<UInt32> getByDesktopEntry(String desktopEntry)
+    {
+        return ids(this.byDesktopEntry.get(desktopEntry));
+    }
+
+    /**
+     * @return the ids removed, oldest first
+     */
+    public synchronized List<UInt32> removeByApp(String appName)
+    {
+        return removeAll(this.byApp.get(appName));
+    }
+
+    public synchronized List<UInt32> removeByCategory(String category)
+    {
+        return removeAll(this.byCategory.get(category));
+    }
+
+    public synchronized List<UInt32> removeByDesktopEntry(String desktopEntry)
+    {
+        return removeAll(this.byDesktopEntry.get(desktopEntry));
+    }
+
+    /**
+     * Evicts the notifications older than the maximum age, which otherwise only happens when one is put.
+     *
+     * @return the ids evicted
+     */
+    public synchronized List<UInt32> evictExpired()
+    {
+        return evict();
+    }
+
+    public synchronized int size()
+    {
+        return this.records.size();
+    }
+
+    /**
+     * @return the estimated size of the notifications, excluding images
+     */
+    public synchronized long getBytes()
+    {
+        return this.bytes;
+    }
+
+    public synchronized long getImageBytes()
+    {
+        return this.imageBytes;
+    }
+
+    /**
+     * @return the size of the images held in direct buffers
+     */
+    public synchronized long getOffHeapBytes()
+    {
+        return this.offHeapBytes;
+    }
+
+    public synchronized void clear()
+    {
+        this.records.clear();
+        this.byApp.clear();
+        this.byCategory.clear();
+        this.byDesktopEntry.clear();
+        this.bytes = 0;
+        this.imageBytes = 0;
+        this.offHeapBytes = 0;
+    }
+
+    private List<UInt32> evict()
+    {
+        List<UInt32> evicted = new ArrayList<>(0);
+        long oldest = this.maxAgeMillis > 0 ? this.clock.getAsLong() - this.maxAgeMillis : Long.MIN_VALUE;
+        Iterator<Record> iterator = this.records.values().iterator();
+        while (iterator.hasNext())
+        {
+            Record record = iterator.next();
+            boolean over = this.records.size() > this.maxCount
+                    || this.bytes > this.maxBytes
+                    || record.timestamp < oldest;
+            if (!over)
+            {
+                if (this.imageBytes <= this.maxImageBytes)
+                {
+                    break;
+                }
+                if (record.imageBytes == 0)
+                {
+                    // evicting it would free no image bytes
+                    continue;
+                }
+            }
+            iterator.remove();
+            unindex(record);
+            evicted.add(record.id);
+        }
+        return evicted;
+    }
+
+    private List<UInt32> removeAll(Set<Record> indexed)
+    {
+        if (indexed == null)
+        {
+            return Collections.emptyList();
+        }
+        List<UInt32> removed = ids(indexed);
+        for (Record record : new ArrayList<>(indexed))
+        {
+            removeRecord(record);
+        }
+        return removed;
+    }
+
+    private boolean removeRecord(Record record)
+    {
+        if (record == null)
+        {
+            return false;
+        }
+        this.records.remove(record.id);
+        unindex(record);
+        return true;
+    }
+
+    private void unindex(Record record)
+    {
+        unindex(this.byApp, record.app, record);
+        unindex(this.byCategory, record.category, record);
+        unindex(this.byDesktopEntry, record.desktopEntry, record);
+        this.bytes -= record.bytes;
+        this.imageBytes -= record.imageBytes;
+        this.offHeapBytes -= record.spilled == null ? 0 : record.imageBytes;
+    }
+
+    private static List<UInt32> ids(Set<Record> indexed)
+    {
+        if (indexed == null)
+        {
+            return Collections.emptyList();
+        }
+        List<UInt32> ids = new ArrayList<>(indexed.size());
+        for (Record record : indexed)
+        {
+            ids.add(record.id);
+        }
+        return ids;
+    }
+
+    private static void index(Map<String, Set<Record>> index, String key, Record record)
+    {
+        if (key != null)
+        {
+            index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(record);
+        }
+    }
+
+    private static void unindex(Map<String, Set<Record>> index, String key, Record record)
+    {
+        if (key == null)
+        {
+            return;
+        }
+        Set<Record> indexed = index.get(key);
+        if (indexed != null && indexed.remove(record) && indexed.isEmpty())
+        {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * @return the image hint, decoded from its struct if it was received from the bus, or null if there is none or
+     * it is malformed
+     */
+    private static Notifications.RawImage image(Notifications.Hints hints)
+    {
+        try
+        {
+            return hints.get(Notifications.HintKey.IMAGE_DATA);
+        } catch (RuntimeException e)
+        {
+            // sent by another process, which may not follow the specification
+            return null;
+        }
+    }
+
+    private static long estimate(Notification notification)
+    {
+        long size = RECORD_OVERHEAD;
+        size += chars(notification.getAppName()) + chars(notification.getAppIcon());
+        size += chars(notification.getSummary()) + chars(notification.getBody());
+        for (Notifications.Action action : notification.getActions().getActions())
+        {
+            size += 32 + chars(action.getIdentifier()) + chars(action.getText());
+        }
+        Notifications.Hints hints = notification.getHints();
+        for (String key : hints.keys())
+        {
+            // values are mostly short strings, bytes and booleans
+            size += 64 + chars(key);
+        }
+        return size;
+    }
+
+    private static long chars(String value)
+    {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static final class Record
+    {
+
+        private final UInt32 id;
+
+        private final long timestamp;
+
+        private final String app;
+
+        private final String category;
+
+        private final String desktopEntry;
+
+        private final long bytes;
+
+        private final long imageBytes;
+
+        /**
+         * The notification, without its image if that was spilled.
+         */
+        private final Notification notification;
+
+        private final ByteBuffer spilled;
+
+        /**
+         * Width, height, stride, bits per sample, channels and alpha of the spilled image.
+         */
+        private final int[] shape;
+
+        Record(UInt32 id, Notification notification, long timestamp, int spillThreshold)
+        {
+            this.id = id;
+            this.timestamp = timestamp;
+            Notifications.Hints hints = notification.getHints();
+            this.app = notification.getAppName();
+            this.category = hints.get(Notifications.HintKey.CATEGORY);
+            this.desktopEntry = hints.get(Notifications.HintKey.DESKTOP_ENTRY);
+            this.bytes = estimate(notification);
+            Notifications.RawImage image = image(hints);
+            this.imageBytes = image == null ? 0 : image.getData().length;
+            if (image != null && spillThreshold >= 0 && this.imageBytes >= spillThreshold)
+            {
+                this.spilled = ByteBuffer.allocateDirect(image.getData().length);
+                this.spilled.put(image.getData()).flip();
+                this.shape = new int[]{
+                        image.getWidth(),
+                        image.getHeight(),
+                        image.getStride(),
+                        image.getBitsPerSample(),
+                        image.getChannels(),
+                        image.isHasAlpha() ? 1 : 0
+                };
+                Notifications.Hints stripped = new Notifications.Hints();
+                stripped.setAll(hints);
+                stripped.remove(Notifications.HintKey.IMAGE_DATA);
+                this.notification = notification.toBuilder().hints(stripped.freeze()).build();
+            } else if (image != null)
+            {
+                // kept decoded, the struct received from the bus holds its pixels as boxed bytes
+                Notifications.Hints decoded = new Notifications.Hints(hints);
+                decoded.set(Notifications.HintKey.IMAGE_DATA, image);
+                this.spilled = null;
+                this.shape = null;
+                this.notification = notification.toBuilder().hints(decoded.freeze()).build();
+            } else
+            {
+                this.spilled = null;
+                this.shape = null;
+                this.notification = notification;
+            }
+        }
+
+        Notification restore()
+        {
+            if (this.spilled == null)
+            {
+                return this.notification;
+            }
+            byte[] data = new byte[this.spilled.remaining()];
+            this.spilled.duplicate().get(data);
+            int[] shape = this.shape;
+            Notifications.Hints hints = new Notifications.Hints(this.notification.getHints());
+            hints.set(Notifications.HintKey.IMAGE_DATA,
+                    new Notifications.RawImage(shape[0], shape[1], shape[2], shape[5] != 0, shape[3], shape[4], data));
+            return this.notification.toBuilder().hints(hints).build();
+        }
+
+    }
+
+}
@@ -0,0 +1,501 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the notifications a process has opened and how they ended, so a restarted process can
+ * close or take over the notifications it left on screen.
+ * <p/>
+ * Records have a fixed size and are written into a memory-mapped file, so appending is a copy into memory. The
+ * mapped pages are forced to disk by a background thread every flush interval, rather than once per record; a crash
+ * loses at most the records of the last interval. Opening a journal replays it, and rewrites it to hold only the
+ * notifications that were still open.
+ * <p/>
+ * Notifications are identified by the id the server gave them, so the journal is only meaningful while the same
+ * server is running.
+ *
+ * @see JournalingNotifications
+ */
+public class NotificationJournal implements NotificationListener, AutoCloseable
+{
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    static final int RECORD_SIZE = 64;
+
+    private static final int MAGIC = 0x4E4A524E;
+
+    private static final int VERSION = 1;
+
+    private static final int RECORDS_PER_REGION = 16384;
+
+    private static final long REGION_SIZE = (long) RECORD_SIZE * RECORDS_PER_REGION;
+
+    private static final byte OPENED = 1;
+
+    private static final byte CLOSED = 2;
+
+    private static final byte ACTION_INVOKED = 3;
+
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+
+    @Getter
+    private final Path path;
+
+    private final Map<UInt32, Entry> live = new LinkedHashMap<>();
+
+    private final List<MappedByteBuffer> unflushed = new ArrayList<>();
+
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    private final CRC32 crc = new CRC32();
+
+    private final ScheduledExecutorService flusher;
+
+    private final List<AutoCloseable> handlers = new ArrayList<>(2);
+
+    private FileChannel channel;
+
+    private MappedByteBuffer region;
+
+    private long regionStart;
+
+    private boolean dirty;
+
+    private boolean closed;
+
+    private NotificationJournal(Path path, long flushIntervalMillis) throws IOException
+    {
+        this.path = path;
+        recover();
+        rewrite();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "NotificationJournal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMillis,
+                flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public static NotificationJournal open(Path path) throws IOException
+    {
+        return open(path, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal, creating it if it does not exist. The notifications it records as open are returned by
+     * {@link #getLive()}.
+     */
+    public static NotificationJournal open(Path path, long flushIntervalMillis) throws IOException
+    {
+        return new NotificationJournal(path, flushIntervalMillis);
+    }
+
+    /**
+     * Records the outcome of every notification in the journal, from signals received on the connection.
+     */
+    public void attach(AbstractConnection connection) throws DBusException
+    {
+        this.handlers.add(connection.addSigHandler(Notifications.NotificationClosed.class, this::onClosed));
+        this.handlers.add(connection.addSigHandler(Notifications.ActionInvoked.class, this::onActionInvoked));
+    }
+
+    /**
+     * Records a notification that was opened, or replaced under the same id.
+     */
+    public void opened(UInt32 id, Notification notification)
+    {
+        long now = System.currentTimeMillis();
+        long appHash = hash(notification.getAppName());
+        long summaryHash = hash(notification.getSummary());
+        long hintsDigest = digest(notification.getHints());
+        boolean resident = Boolean.TRUE.equals(notification.getHints().get(Notifications.HintKey.RESIDENT));
+        synchronized (this)
+        {
+            if (this.closed)
+            {
+                return;
+            }
+            Entry replaced = this.live.get(id);
+            Entry entry = new Entry(id, replaced == null ? now : replaced.opened, appHash, summaryHash, hintsDigest,
+                    resident);
+            this.live.put(id, entry);
+            append(OPENED, entry, (byte) 0, 0);
+        }
+    }
+
+    /**
+     * Records a notification that was closed for the reason given.
+     */
+    public void closed(UInt32 id, Notifications.CloseReason reason)
+    {
+        synchronized (this)
+        {
+            Entry entry = this.live.remove(id);
+            if (entry == null || this.closed)
+            {
+                return;
+            }
+            append(CLOSED, entry, (byte) reason.getCode(), 0);
+        }
+    }
+
+    @Override
+    public void onClosed(Notifications.NotificationClosed signal)
+    {
+        closed(signal.getId(), Notifications.CloseReason.of(signal.getReason()));
+    }
+
+    @Override
+    public void onActionInvoked(Notifications.ActionInvoked signal)
+    {
+        synchronized (this)
+        {
+            Entry entry = this.live.get(signal.getId());
+            if (entry == null || this.closed)
+            {
+                return;
+            }
+            append(ACTION_INVOKED, entry, (byte) 0, hash(signal.getAction()));
+        }
+    }
+
+    /**
+     * @return the notifications opened and not yet closed, including those recovered from previous runs
+     */
+    public synchronized List<Entry> getLive()
+    {
+        return new ArrayList<>(this.live.values());
+    }
+
+    public synchronized boolean isLive(UInt32 id)
+    {
+        return this.live.containsKey(id);
+    }
+
+    /**
+     * Forces the records appended so far to disk.
+     */
+    public void flush() throws IOException
+    {
+        List<MappedByteBuffer> regions;
+        synchronized (this)
+        {
+            if (!this.dirty || this.region == null)
+            {
+                return;
+            }
+            this.dirty = false;
+            regions = new ArrayList<>(this.unflushed);
+            this.unflushed.clear();
+            regions.add(this.region);
+        }
+        for (MappedByteBuffer region : regions)
+        {
+            region.force();
+        }
+    }
+
+    /**
+     * Rewrites the journal to hold only the notifications that are still open.
+     */
+    public synchronized void compact() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        for (MappedByteBuffer region : this.unflushed)
+        {
+            region.force();
+        }
+        this.unflushed.clear();
+        this.region.force();
+        this.channel.close();
+        rewrite();
+    }
+
+    /**
+     * Computes the hash the journal records for a string, such as an app name, to compare with
+     * {@link Entry#getAppHash()}.
+     */
+    public static long hash(String value)
+    {
+        long hash = 0xcbf29ce484222325L;
+        if (value != null)
+        {
+            for (int i = 0; i < value.length(); i++)
+            {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * A digest of the hint names and their simple values. Images and other structures contribute only their type.
+     */
+    static long digest(Notifications.Hints hints)
+    {
+        Map<?, ?> variants = (Map<?, ?>) hints.serialize()[0];
+        long hash = hash("");
+        for (String key : new TreeSet<>(hints.keys()))
+        {
+            hash = (hash * 31) + hash(key);
+            Variant<?> variant = (Variant<?>) variants.get(key);
+            Object value = variant == null ? null : variant.getValue();
+            String text = value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                    ? value.toString()
+                    : value == null ? "" : value.getClass().getName();
+            hash = (hash * 31) + hash(text);
+        }
+        return hash;
+    }
+
+    private void append(byte type, Entry entry, byte reason, long action)
+    {
+        ByteBuffer record = this.record;
+        record.clear();
+        record.put(type);
+        record.put((byte) (entry.resident ? 1 : 0));
+        record.put(reason);
+        record.put((byte) 0);
+        record.putInt(entry.id.intValue());
+        record.putLong(System.currentTimeMillis());
+        record.putLong(entry.appHash);
+        record.putLong(entry.summaryHash);
+        record.putLong(entry.hintsDigest);
+        record.putLong(action);
+        record.putLong(entry.opened);
+        this.crc.reset();
+        this.crc.update(record.array(), 0, CRC_OFFSET);
+        record.putInt(CRC_OFFSET, (int) this.crc.getValue());
+        record.clear();
+        try
+        {
+            if (!this.region.hasRemaining())
+            {
+                this.unflushed.add(this.region);
+                this.regionStart += REGION_SIZE;
+                this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, REGION_SIZE);
+            }
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        this.region.put(record);
+        this.dirty = true;
+    }
+
+    /**
+     * Replays the journal into {@link #live}, stopping at the first record which is incomplete or corrupt.
+     */
+    private void recover() throws IOException
+    {
+        if (!Files.exists(this.path))
+        {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 256);
+            if (channel.read(buffer) < RECORD_SIZE)
+            {
+                return;
+            }
+            buffer.flip();
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE)
+            {
+                throw new IOException(this.path + " is not a notification journal");
+            }
+            buffer.position(RECORD_SIZE);
+            while (true)
+            {
+                if (buffer.remaining() < RECORD_SIZE)
+                {
+                    buffer.compact();
+                    if (channel.read(buffer) <= 0 && buffer.position() < RECORD_SIZE)
+                    {
+                        return;
+                    }
+                    buffer.flip();
+                    if (buffer.remaining() < RECORD_SIZE)
+                    {
+                        return;
+                    }
+                }
+                int start = buffer.position();
+                this.crc.reset();
+                this.crc.update(buffer.array(), start, CRC_OFFSET);
+                byte type = buffer.get(start);
+                if (type == 0 || buffer.getInt(start + CRC_OFFSET) != (int) this.crc.getValue())
+                {
+                    return;
+                }
+                replay(type, buffer);
+                buffer.position(start + RECORD_SIZE);
+            }
+        }
+    }
+
+    private void replay(byte type, ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        UInt32 id = new UInt32(Integer.toUnsignedLong(buffer.getInt(start + 4)));
+        if (type == OPENED)
+        {
+            this.live.put(id, new Entry(id,
+                    buffer.getLong(start + 48),
+                    buffer.getLong(start + 16),
+                    buffer.getLong(start + 24),
+                    buffer.getLong(start + 32),
+                    buffer.get(start + 1) != 0));
+        } else if (type == CLOSED)
+        {
+            this.live.remove(id);
+        }
+    }
+
+    /**
+     * Writes the live entries to a new journal which replaces the old one, and maps it for appending.
+     */
+    private void rewrite() throws IOException
+    {
+        Path directory = this.path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, this.path.getFileName().toString(), ".tmp");
+        try
+        {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).clear();
+                channel.write(header);
+                this.channel = channel;
+                this.regionStart = RECORD_SIZE;
+                this.region = channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, REGION_SIZE);
+                for (Entry entry : this.live.values())
+                {
+                    append(OPENED, entry, (byte) 0, 0);
+                }
+                for (MappedByteBuffer region : this.unflushed)
+                {
+                    region.force();
+                }
+                this.unflushed.clear();
+                this.region.force();
+                channel.force(true);
+            }
+            Files.move(temporary, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long appended = this.region.position();
+        this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, REGION_SIZE);
+        this.region.position((int) appended);
+        this.dirty = false;
+    }
+
+    private void flushQuietly()
+    {
+        try
+        {
+            flush();
+        } catch (IOException | UncheckedIOException ignored)
+        {
+            // retried on the next interval
+        }
+    }
+
+    /**
+     * Removes the signal handlers, flushes and closes the journal. Later records are ignored.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        for (AutoCloseable handler : this.handlers)
+        {
+            try
+            {
+                handler.close();
+            } catch (Exception ignored)
+            {
+                // the connection may already be closed
+            }
+        }
+        this.flusher.shutdown();
+        flush();
+        synchronized (this)
+        {
+            this.closed = true;
+            this.channel.close();
+        }
+    }
+
+    /**
+     * A notification recorded as open
+     */
+    @Getter
+    @ToString
+    public static final class Entry
+    {
+
+        private final UInt32 id;
+
+        /**
+         * When the notification was first opened, in milliseconds since the epoch
+         */
+        private final long opened;
+
+        private final long appHash;
+
+        private final long summaryHash;
+
+        private final long hintsDigest;
+
+        private final boolean resident;
+
+        Entry(UInt32 id, long opened, long appHash, long summaryHash, long hintsDigest, boolean resident)
+        {
+            this.id = id;
+            this.opened = opened;
+            this.appHash = appHash;
+            this.summaryHash = summaryHash;
+            this.hintsDigest = hintsDigest;
+            this.resident = resident;
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+
+/**
+ * Receives the signals addressed to a single notification.
+ *
+ * @see NotificationSignals
+ */
+public interface NotificationListener
+{
+
+    /**
+     * Called once, after which the listener is unregistered.
+     */
+    default void onClosed(Notifications.NotificationClosed signal)
+    {
+    }
+
+    default void onActionInvoked(Notifications.ActionInvoked signal)
+    {
+    }
+
+    default void onActivationToken(Notifications.ActivationToken signal)
+    {
+    }
+
+    default void onReplied(Notifications.KdeNotificationReplied signal)
+    {
+    }
+
+}
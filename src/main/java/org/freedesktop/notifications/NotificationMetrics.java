@@ -0,0 +1,79 @@
+package org.freedesktop.notifications;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.messages.DBusSignal;
+
+/**
+ * Receives measurements from {@link InstrumentedNotifications} and {@link NotificationSignals}.
+ * <p/>
+ * Implementations must be thread safe and return quickly, as they are called on the calling thread and on the
+ * signal dispatch threads. When {@link #isEnabled()} is false nothing is measured, so {@link #NOOP} costs no more
+ * than a field read per call.
+ *
+ * @see SimpleNotificationMetrics
+ */
+public interface NotificationMetrics
+{
+
+    NotificationMetrics NOOP = new NotificationMetrics()
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return false;
+        }
+    };
+
+    /**
+     * The methods of {@link Notifications}, by their D-Bus member name
+     */
+    @Getter
+    @AllArgsConstructor
+    enum Method
+    {
+        NOTIFY("Notify"),
+        CLOSE_NOTIFICATION("CloseNotification"),
+        GET_CAPABILITIES("GetCapabilities"),
+        GET_SERVER_INFORMATION("GetServerInformation"),
+        INHIBIT("Inhibit"),
+        UN_INHIBIT("UnInhibit");
+
+        private final String member;
+
+    }
+
+    default boolean isEnabled()
+    {
+        return true;
+    }
+
+    default void started(Method method)
+    {
+    }
+
+    /**
+     * @param failure the exception thrown by the call, or null if it succeeded
+     */
+    default void completed(Method method, long nanos, Throwable failure)
+    {
+    }
+
+    /**
+     * @param type one of the signal classes declared by {@link Notifications}
+     */
+    default void signalReceived(Class<? extends DBusSignal> type)
+    {
+    }
+
+    /**
+     * Called for every {@link Notifications#open} call, before it is made.
+     *
+     * @param imageBytes the size of the image-data hint, or 0
+     */
+    default void payload(int hints, int actions, int imageBytes)
+    {
+    }
+
+}
@@ -0,0 +1,516 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded outgoing queue which sends notifications in order of {@link Notifications.Urgency}, rate limited per app.
+ * <p/>
+ * {@link Notifications.Urgency#CRITICAL} notifications are sent before any other and are never rate limited or
+ * dropped. When the queue is full a waiting {@link Notifications.Urgency#LOW} notification is dropped to make room
+ * for a {@link Notifications.Urgency#NORMAL} one, otherwise the new notification is dropped. A low urgency
+ * notification with the same app name and summary as one still waiting replaces it instead of being queued.
+ * <p/>
+ * The futures of dropped notifications fail with {@link RejectedExecutionException}.
+ * <p/>
+ * Waiting notifications are kept per app. Apps with a permit are ordered by their oldest waiting notification and
+ * apps without one by when their next permit is due, and low urgency notifications are indexed by app and summary,
+ * so submitting, coalescing and taking the next notification cost time in the log of the number of apps rather than
+ * in proportion to the depth of the queue.
+ */
+public class NotificationQueue implements AutoCloseable
+{
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    private static final int MAX_IDLE_BUCKETS = 1024;
+
+    @Getter
+    private final Notifications notifications;
+
+    @Getter
+    private final int capacity;
+
+    private final double permitsPerSecond;
+
+    private final int burst;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = this.lock.newCondition();
+
+    private final Deque<Entry> critical = new ArrayDeque<>();
+
+    private final Map<String, AppQueue> apps = new HashMap<>();
+
+    /**
+     * Apps with a permit and a waiting normal urgency notification, by their oldest one.
+     */
+    private final NavigableSet<AppQueue> readyNormal = new TreeSet<>(
+            Comparator.comparingLong(app -> app.normal.getFirst().sequence));
+
+    /**
+     * Apps with a permit and a waiting low urgency notification, by their oldest one.
+     */
+    private final NavigableSet<AppQueue> readyLow = new TreeSet<>(
+            Comparator.comparingLong(app -> app.low.getFirst().sequence));
+
+    /**
+     * Apps with waiting notifications and no permit, by when their next permit is due.
+     */
+    private final NavigableSet<AppQueue> throttled = new TreeSet<>(
+            Comparator.<AppQueue>comparingLong(app -> app.due).thenComparingLong(app -> app.sequence));
+
+    /**
+     * Every waiting low urgency notification, oldest first, the first being dropped to make room.
+     */
+    private final Set<Entry> low = new LinkedHashSet<>();
+
+    private int waiting;
+
+    private long sequence;
+
+    private final AtomicLong[] dropped = new AtomicLong[Notifications.Urgency.values().length];
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong collapsed = new AtomicLong();
+
+    private final Thread worker;
+
+    private volatile boolean closed;
+
+    /**
+     * @param capacity         the number of notifications that may wait, excluding critical ones
+     * @param permitsPerSecond the sustained rate of non-critical notifications per app name
+     * @param burst            the number of non-critical notifications an idle app may send at once
+     */
+    public NotificationQueue(Notifications notifications, int capacity, double permitsPerSecond, int burst)
+    {
+        this.notifications = notifications;
+        this.capacity = capacity;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        for (int i = 0; i < this.dropped.length; i++)
+        {
+            this.dropped[i] = new AtomicLong();
+        }
+        this.worker = new Thread(this::run, "NotificationQueue");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return a future completed with the id of the notification once it is sent
+     */
+    public CompletableFuture<UInt32> submit(Notification notification)
+    {
+        Notifications.Urgency urgency = notification.getUrgency();
+        this.lock.lock();
+        try
+        {
+            if (this.closed)
+            {
+                throw new RejectedExecutionException("Queue is closed");
+            }
+            if (urgency == Notifications.Urgency.CRITICAL)
+            {
+                Entry entry = new Entry(notification, null, ++this.sequence);
+                this.critical.addLast(entry);
+                this.changed.signal();
+                return entry.future;
+            }
+            long now = System.nanoTime();
+            AppQueue app = app(notification.getAppName(), now);
+            if (urgency == Notifications.Urgency.LOW)
+            {
+                Entry similar = app.similar.get(notification.getSummary());
+                if (similar != null)
+                {
+                    similar.notification = notification;
+                    this.collapsed.incrementAndGet();
+                    return similar.future;
+                }
+            }
+            if (this.waiting >= this.capacity && !makeRoom(urgency, now))
+            {
+                return drop(new Entry(notification, app, 0), urgency);
+            }
+            return enqueue(app, notification, urgency == Notifications.Urgency.LOW, now);
+        } finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of notifications waiting to be sent
+     */
+    public int getDepth()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.critical.size() + this.waiting;
+        } finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    public long getDropped(Notifications.Urgency urgency)
+    {
+        return this.dropped[urgency.ordinal()].get();
+    }
+
+    public long getDropped()
+    {
+        long total = 0;
+        for (AtomicLong count : this.dropped)
+        {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of low urgency notifications that replaced a waiting one
+     */
+    public long getCollapsed()
+    {
+        return this.collapsed.get();
+    }
+
+    public long getSent()
+    {
+        return this.sent.get();
+    }
+
+    public long getFailed()
+    {
+        return this.failed.get();
+    }
+
+    private CompletableFuture<UInt32> enqueue(AppQueue app, Notification notification, boolean isLow, long now)
+    {
+        Entry entry = new Entry(notification, app, ++this.sequence);
+        unschedule(app);
+        if (isLow)
+        {
+            app.low.addLast(entry);
+            app.similar.put(notification.getSummary(), entry);
+            this.low.add(entry);
+        } else
+        {
+            app.normal.addLast(entry);
+        }
+        this.waiting++;
+        schedule(app, now);
+        this.changed.signal();
+        return entry.future;
+    }
+
+    private boolean makeRoom(Notifications.Urgency urgency, long now)
+    {
+        if (!this.low.isEmpty() && urgency != Notifications.Urgency.LOW)
+        {
+            Iterator<Entry> oldest = this.low.iterator();
+            Entry entry = oldest.next();
+            oldest.remove();
+            // the oldest low urgency notification overall is also the oldest of its app
+            AppQueue app = entry.app;
+            unschedule(app);
+            app.low.removeFirst();
+            app.similar.remove(entry.notification.getSummary(), entry);
+            this.waiting--;
+            schedule(app, now);
+            drop(entry, Notifications.Urgency.LOW);
+            return true;
+        }
+        return false;
+    }
+
+    private CompletableFuture<UInt32> drop(Entry entry, Notifications.Urgency urgency)
+    {
+        this.dropped[urgency.ordinal()].incrementAndGet();
+        entry.future.completeExceptionally(new RejectedExecutionException("Notification queue is full"));
+        return entry.future;
+    }
+
+    private void run()
+    {
+        while (!this.closed)
+        {
+            Entry entry;
+            try
+            {
+                entry = take();
+            } catch (InterruptedException e)
+            {
+                return;
+            }
+            if (entry == null)
+            {
+                continue;
+            }
+            try
+            {
+                UInt32 id = entry.notification.send(this.notifications, NO_REPLACE);
+                this.sent.incrementAndGet();
+                entry.future.complete(id);
+            } catch (RuntimeException e)
+            {
+                this.failed.incrementAndGet();
+                entry.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private Entry take() throws InterruptedException
+    {
+        this.lock.lockInterruptibly();
+        try
+        {
+            while (!this.closed)
+            {
+                Entry entry = this.critical.pollFirst();
+                if (entry != null)
+                {
+                    return entry;
+                }
+                long now = System.nanoTime();
+                while (!this.throttled.isEmpty() && this.throttled.first().due - now <= 0)
+                {
+                    schedule(this.throttled.pollFirst(), now);
+                }
+                entry = takeReady(now);
+                if (entry != null)
+                {
+                    return entry;
+                }
+                if (this.throttled.isEmpty())
+                {
+                    this.changed.await();
+                } else
+                {
+                    this.changed.awaitNanos(this.throttled.first().due - now);
+                }
+            }
+            return null;
+        } finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the oldest notification of an app with a permit, normal urgency first, or null if there is none
+     */
+    private Entry takeReady(long now)
+    {
+        while (!this.readyNormal.isEmpty() || !this.readyLow.isEmpty())
+        {
+            boolean isLow = this.readyNormal.isEmpty();
+            AppQueue app = isLow ? this.readyLow.first() : this.readyNormal.first();
+            unschedule(app);
+            Entry entry = null;
+            if (app.bucket.tryAcquire(now))
+            {
+                if (isLow)
+                {
+                    entry = app.low.removeFirst();
+                    app.similar.remove(entry.notification.getSummary(), entry);
+                    this.low.remove(entry);
+                } else
+                {
+                    entry = app.normal.removeFirst();
+                }
+                this.waiting--;
+            }
+            // throttled if the permit was gone after all
+            schedule(app, now);
+            if (entry != null)
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Files an app with waiting notifications under the ready apps if it has a permit, or the throttled apps.
+     */
+    private void schedule(AppQueue app, long now)
+    {
+        if (app.normal.isEmpty() && app.low.isEmpty())
+        {
+            return;
+        }
+        long nanos = app.bucket.nanosUntilAvailable(now);
+        if (nanos > 0)
+        {
+            app.due = now + nanos;
+            this.throttled.add(app);
+            return;
+        }
+        if (!app.normal.isEmpty())
+        {
+            this.readyNormal.add(app);
+        }
+        if (!app.low.isEmpty())
+        {
+            this.readyLow.add(app);
+        }
+    }
+
+    /**
+     * Takes the app out of the ordered sets, before anything they are ordered by changes.
+     */
+    private void unschedule(AppQueue app)
+    {
+        if (!this.throttled.remove(app))
+        {
+            if (!app.normal.isEmpty())
+            {
+                this.readyNormal.remove(app);
+            }
+            if (!app.low.isEmpty())
+            {
+                this.readyLow.remove(app);
+            }
+        }
+    }
+
+    private AppQueue app(String name, long now)
+    {
+        AppQueue app = this.apps.get(name);
+        if (app == null)
+        {
+            if (this.apps.size() >= MAX_IDLE_BUCKETS)
+            {
+                this.apps.values().removeIf(candidate -> candidate.normal.isEmpty() && candidate.low.isEmpty()
+                        && candidate.bucket.isFull(now));
+            }
+            app = new AppQueue(new TokenBucket(this.permitsPerSecond, this.burst, now), ++this.sequence);
+            this.apps.put(name, app);
+        }
+        return app;
+    }
+
+    /**
+     * Stops sending. Notifications still waiting are failed with {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() throws InterruptedException
+    {
+        this.lock.lock();
+        try
+        {
+            this.closed = true;
+            this.changed.signalAll();
+            List<Deque<Entry>> queues = new ArrayList<>();
+            queues.add(this.critical);
+            for (AppQueue app : this.apps.values())
+            {
+                queues.add(app.normal);
+                queues.add(app.low);
+                app.similar.clear();
+            }
+            for (Deque<Entry> queue : queues)
+            {
+                for (Entry entry : queue)
+                {
+                    entry.future.completeExceptionally(new RejectedExecutionException("Queue is closed"));
+                }
+                queue.clear();
+            }
+            this.readyNormal.clear();
+            this.readyLow.clear();
+            this.throttled.clear();
+            this.low.clear();
+            this.waiting = 0;
+        } finally
+        {
+            this.lock.unlock();
+        }
+        this.worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static final class Entry
+    {
+
+        private final CompletableFuture<UInt32> future = new CompletableFuture<>();
+
+        private final AppQueue app;
+
+        private final long sequence;
+
+        private Notification notification;
+
+        Entry(Notification notification, AppQueue app, long sequence)
+        {
+            this.notification = notification;
+            this.app = app;
+            this.sequence = sequence;
+        }
+
+    }
+
+    /**
+     * The waiting notifications and permits of one app, guarded by the queue's lock.
+     */
+    private static final class AppQueue
+    {
+
+        private final TokenBucket bucket;
+
+        /**
+         * Orders apps throttled until the same instant.
+         */
+        private final long sequence;
+
+        private final Deque<Entry> normal = new ArrayDeque<>();
+
+        private final Deque<Entry> low = new ArrayDeque<>();
+
+        /**
+         * The waiting low urgency notifications by summary.
+         */
+        private final Map<String, Entry> similar = new HashMap<>();
+
+        /**
+         * When the next permit is due, while the app is throttled.
+         */
+        private long due;
+
+        AppQueue(TokenBucket bucket, long sequence)
+        {
+            this.bucket = bucket;
+            this.sequence = sequence;
+        }
+
+    }
+
+}
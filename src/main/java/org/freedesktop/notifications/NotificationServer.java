@@ -0,0 +1,633 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.errors.PropertyReadOnly;
+import org.freedesktop.dbus.errors.UnknownInterface;
+import org.freedesktop.dbus.errors.UnknownProperty;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A notification server which keeps notifications in memory, for hosts without a desktop notification daemon and
+ * as a stand-in for one in tests.
+ * <p/>
+ * It may be called in-process as {@link Notifications}, or exported on a bus with {@link #export(DBusConnection)}.
+ * Ids are allocated without locking, and at most {@link #getCapacity()} notifications are kept at once; when
+ * the limit is exceeded the oldest is closed with {@link Notifications.CloseReason#UNDEFINED}.
+ * <p/>
+ * Signals are sent on the exported connection and to the listeners added with {@link #addListener}. The
+ * {@link Notifications#INHIBITED} property can be read on the bus, and {@code PropertiesChanged} is sent when it
+ * changes.
+ * <p/>
+ * Given a {@link NotificationHistory}, the server also keeps each notification there after it expires or leaves the
+ * screen, until a client closes it or the user dismisses it.
+ */
+public class NotificationServer implements Notifications, AutoCloseable
+{
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    public static final Notifications.ServerInformation DEFAULT_INFORMATION =
+            new Notifications.ServerInformation("dbus-java-desktop", "freedesktop", "1.0", "1.2");
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    private static final HintKey<Object> RAW_URGENCY = new HintKey<>("urgency", Object.class, 1.0);
+
+    @Getter
+    private final Notifications.ServerInformation serverInformation;
+
+    private final String[] capabilities;
+
+    @Getter
+    private final int capacity;
+
+    @Getter
+    private final long defaultTimeoutMillis;
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private final AtomicInteger cookies = new AtomicInteger();
+
+    private final Map<UInt32, Entry> notifications = new ConcurrentHashMap<>();
+
+    private final Queue<UInt32> order = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger ordered = new AtomicInteger();
+
+    private final Map<UInt32, String> inhibitors = new ConcurrentHashMap<>();
+
+    private final List<NotificationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    @Getter
+    private final NotificationHistory history;
+
+    private volatile DBusConnection connection;
+
+    public NotificationServer()
+    {
+        this(DEFAULT_INFORMATION,
+                DEFAULT_CAPACITY,
+                DEFAULT_TIMEOUT_MILLIS,
+                Capabilities.ACTIONS,
+                Capabilities.BODY,
+                Capabilities.PERSISTENCE);
+    }
+
+    /**
+     * @param capacity             the number of notifications kept at once
+     * @param defaultTimeoutMillis used when a notification asks for the server default, 0 to never expire
+     */
+    public NotificationServer(
+            Notifications.ServerInformation serverInformation,
+            int capacity,
+            long defaultTimeoutMillis,
+            String... capabilities)
+    {
+        this(serverInformation, capacity, defaultTimeoutMillis, null, capabilities);
+    }
+
+    /**
+     * @param history keeps the notifications until they are acknowledged, or null
+     */
+    public NotificationServer(
+            Notifications.ServerInformation serverInformation,
+            int capacity,
+            long defaultTimeoutMillis,
+            NotificationHistory history,
+            String... capabilities)
+    {
+        this.history = history;
+        this.serverInformation = serverInformation;
+        this.capacity = capacity;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.capabilities = capabilities.clone();
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "NotificationServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // cancelled timeouts would otherwise stay queued until they were due
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Exports this server at {@link Notifications#OBJECT_PATH} and requests {@link Notifications#NAME}.
+     */
+    public void export(DBusConnection connection) throws DBusException
+    {
+        connection.exportObject(OBJECT_PATH, new Exported());
+        this.connection = connection;
+        try
+        {
+            connection.requestBusName(NAME);
+        } catch (DBusException e)
+        {
+            this.connection = null;
+            connection.unExportObject(OBJECT_PATH);
+            throw e;
+        }
+    }
+
+    public void addListener(NotificationListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(NotificationListener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Actions actions,
+            Hints hints,
+            int timeout)
+    {
+        Notification notification = Notification.builder()
+                .appName(app_name)
+                .appIcon(app_icon)
+                .summary(summary)
+                .body(body)
+                .actions(actions)
+                .hints(hints)
+                .timeout(timeout)
+                .build();
+        if (!NO_REPLACE.equals(replaces))
+        {
+            Entry replaced = this.notifications.computeIfPresent(replaces, (id, previous) -> {
+                previous.cancel();
+                return new Entry(id, notification);
+            });
+            if (replaced != null)
+            {
+                schedule(replaced);
+                remember(replaced);
+                return replaced.id;
+            }
+        }
+        Entry entry = new Entry(allocate(this.ids), notification);
+        this.notifications.put(entry.id, entry);
+        this.order.add(entry.id);
+        schedule(entry);
+        trim();
+        remember(entry);
+        return entry.id;
+    }
+
+    @Override
+    public void close(UInt32 id)
+    {
+        close(id, CloseReason.CLOSED);
+    }
+
+    /**
+     * Closes the notification as though the user dismissed it.
+     */
+    public void dismiss(UInt32 id)
+    {
+        close(id, CloseReason.DISMISSED);
+    }
+
+    /**
+     * Invokes the action as though the user chose it, then dismisses the notification unless it is resident.
+     *
+     * @return false if the notification is not open
+     */
+    public boolean invokeAction(UInt32 id, String action)
+    {
+        Entry entry = this.notifications.get(id);
+        if (entry == null)
+        {
+            return false;
+        }
+        actionInvoked(id, action);
+        if (!Boolean.TRUE.equals(entry.notification.getHints().get(HintKey.RESIDENT)))
+        {
+            close(id, CloseReason.DISMISSED);
+        }
+        return true;
+    }
+
+    /**
+     * @return the open notification, or null
+     */
+    public Notification get(UInt32 id)
+    {
+        Entry entry = this.notifications.get(id);
+        return entry == null ? null : entry.notification;
+    }
+
+    /**
+     * @return the urgency of the open notification, or null if it is not open
+     */
+    public Urgency getUrgency(UInt32 id)
+    {
+        Entry entry = this.notifications.get(id);
+        return entry == null ? null : urgency(entry.notification.getHints());
+    }
+
+    /**
+     * @return the number of open notifications
+     */
+    public int size()
+    {
+        return this.notifications.size();
+    }
+
+    @Override
+    public String[] getCapabilities()
+    {
+        return this.capabilities.clone();
+    }
+
+    @Override
+    public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+    {
+        UInt32 cookie = allocate(this.cookies);
+        synchronized (this.inhibitors)
+        {
+            this.inhibitors.put(cookie, desktop_entry);
+            if (this.inhibitors.size() == 1)
+            {
+                inhibitedChanged(true);
+            }
+        }
+        return cookie;
+    }
+
+    @Override
+    public void release(UInt32 cookie)
+    {
+        synchronized (this.inhibitors)
+        {
+            if (this.inhibitors.remove(cookie) != null && this.inhibitors.isEmpty())
+            {
+                inhibitedChanged(false);
+            }
+        }
+    }
+
+    /**
+     * @return true while any client holds an inhibition cookie
+     */
+    public boolean isInhibited()
+    {
+        return !this.inhibitors.isEmpty();
+    }
+
+    /**
+     * @return the desktop entries of the clients holding inhibition cookies
+     */
+    public Collection<String> getInhibitors()
+    {
+        return new ArrayList<>(this.inhibitors.values());
+    }
+
+    @Override
+    public String getObjectPath()
+    {
+        return OBJECT_PATH;
+    }
+
+    /**
+     * Stops expiring notifications and unexports the server. Open notifications are discarded without signals.
+     */
+    @Override
+    public void close()
+    {
+        this.timer.shutdownNow();
+        DBusConnection connection = this.connection;
+        this.connection = null;
+        if (connection != null)
+        {
+            connection.unExportObject(OBJECT_PATH);
+            try
+            {
+                connection.releaseBusName(NAME);
+            } catch (DBusException ignored)
+            {
+                // the connection may already be closed
+            }
+        }
+        this.notifications.clear();
+        this.order.clear();
+        this.inhibitors.clear();
+    }
+
+    /**
+     * Notifications carry their urgency as a byte per the specification, while {@link HintKey#URGENCY} sends the
+     * name of the constant, so both are accepted.
+     */
+    static Urgency urgency(Hints hints)
+    {
+        Object value = hints.get(RAW_URGENCY);
+        if (value instanceof Number)
+        {
+            int tag = ((Number) value).intValue();
+            for (Urgency urgency : Urgency.values())
+            {
+                if (urgency.getTag() == tag)
+                {
+                    return urgency;
+                }
+            }
+        } else if (value instanceof Urgency)
+        {
+            return (Urgency) value;
+        } else if (value instanceof String)
+        {
+            for (Urgency urgency : Urgency.values())
+            {
+                if (urgency.name().equalsIgnoreCase((String) value))
+                {
+                    return urgency;
+                }
+            }
+        }
+        return Urgency.NORMAL;
+    }
+
+    private static UInt32 allocate(AtomicInteger counter)
+    {
+        int id;
+        do
+        {
+            id = counter.incrementAndGet();
+        } while (id == 0);
+        return new UInt32(Integer.toUnsignedLong(id));
+    }
+
+    private void schedule(Entry entry)
+    {
+        int timeout = entry.notification.getTimeout();
+        long millis = timeout < 0 ? this.defaultTimeoutMillis : timeout;
+        if (millis > 0 && !this.timer.isShutdown())
+        {
+            entry.expiry = this.timer.schedule(() -> expire(entry), millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Keeps the notification in the history, closing those the history evicts if they are still open.
+     */
+    private void remember(Entry entry)
+    {
+        if (this.history != null)
+        {
+            for (UInt32 evicted : this.history.put(entry.id, entry.notification))
+            {
+                close(evicted, CloseReason.UNDEFINED);
+            }
+        }
+    }
+
+    private void expire(Entry entry)
+    {
+        if (this.notifications.remove(entry.id, entry))
+        {
+            closed(entry.id, CloseReason.EXPIRED);
+        }
+    }
+
+    private void close(UInt32 id, CloseReason reason)
+    {
+        Entry entry = this.notifications.remove(id);
+        if (entry != null)
+        {
+            entry.cancel();
+            closed(id, reason);
+        }
+    }
+
+    /**
+     * Closes the oldest notifications while there are too many, and forgets the order of closed ones when they
+     * outnumber the open notifications.
+     */
+    private void trim()
+    {
+        if (this.ordered.incrementAndGet() > (this.capacity * 2) + 16)
+        {
+            this.order.removeIf(id -> !this.notifications.containsKey(id));
+            this.ordered.set(this.order.size());
+        }
+        while (this.notifications.size() > this.capacity)
+        {
+            UInt32 eldest = this.order.poll();
+            if (eldest == null)
+            {
+                return;
+            }
+            this.ordered.decrementAndGet();
+            close(eldest, CloseReason.UNDEFINED);
+        }
+    }
+
+    private void closed(UInt32 id, CloseReason reason)
+    {
+        if (this.history != null && (reason == CloseReason.DISMISSED || reason == CloseReason.CLOSED))
+        {
+            // acknowledged, rather than expired or pushed off the screen
+            this.history.remove(id);
+        }
+        NotificationClosed signal;
+        try
+        {
+            signal = new NotificationClosed(OBJECT_PATH, id, new UInt32(reason.getCode()));
+        } catch (DBusException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        send(signal);
+        for (NotificationListener listener : this.listeners)
+        {
+            listener.onClosed(signal);
+        }
+    }
+
+    private void inhibitedChanged(boolean inhibited)
+    {
+        Properties.PropertiesChanged signal;
+        try
+        {
+            signal = new Properties.PropertiesChanged(OBJECT_PATH, NAME,
+                    Collections.singletonMap(INHIBITED, new Variant<>(inhibited)), Collections.emptyList());
+        } catch (DBusException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        send(signal);
+    }
+
+    private void actionInvoked(UInt32 id, String action)
+    {
+        ActionInvoked signal;
+        try
+        {
+            signal = new ActionInvoked(OBJECT_PATH, id, action);
+        } catch (DBusException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        send(signal);
+        for (NotificationListener listener : this.listeners)
+        {
+            listener.onActionInvoked(signal);
+        }
+    }
+
+    private void send(DBusSignal signal)
+    {
+        DBusConnection connection = this.connection;
+        if (connection != null)
+        {
+            connection.sendMessage(signal);
+        }
+    }
+
+    private static final class Entry
+    {
+
+        private final UInt32 id;
+
+        private final Notification notification;
+
+        private volatile ScheduledFuture<?> expiry;
+
+        Entry(UInt32 id, Notification notification)
+        {
+            this.id = id;
+            this.notification = notification;
+        }
+
+        void cancel()
+        {
+            ScheduledFuture<?> expiry = this.expiry;
+            if (expiry != null)
+            {
+                expiry.cancel(false);
+            }
+        }
+
+    }
+
+    /**
+     * Adapts this server to the interface dbus-java is able to export.
+     */
+    private final class Exported implements ExportedNotifications, Properties
+    {
+
+        @Override
+        public UInt32 open(
+                String app_name,
+                UInt32 replaces,
+                String app_icon,
+                String summary,
+                String body,
+                Actions actions,
+                Hints hints,
+                int timeout)
+        {
+            return NotificationServer.this.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+        }
+
+        @Override
+        public void close(UInt32 id)
+        {
+            NotificationServer.this.close(id);
+        }
+
+        @Override
+        public String[] getCapabilities()
+        {
+            return NotificationServer.this.getCapabilities();
+        }
+
+        @Override
+        public Information<String, String, String, String> getServerInformation()
+        {
+            ServerInformation information = NotificationServer.this.serverInformation;
+            return new Information<>(information.getName(),
+                    information.getVendor(),
+                    information.getVersion(),
+                    information.getSpecVersion());
+        }
+
+        @Override
+        public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+        {
+            return NotificationServer.this.inhibit(desktop_entry, reason, hints);
+        }
+
+        @Override
+        public void release(UInt32 cookie)
+        {
+            NotificationServer.this.release(cookie);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A Get(String interfaceName, String propertyName)
+        {
+            Variant<?> value = GetAll(interfaceName).get(propertyName);
+            if (value == null)
+            {
+                throw new UnknownProperty(propertyName);
+            }
+            return (A) value.getValue();
+        }
+
+        @Override
+        public <A> void Set(String interfaceName, String propertyName, A value)
+        {
+            throw new PropertyReadOnly(propertyName);
+        }
+
+        @Override
+        public Map<String, Variant<?>> GetAll(String interfaceName)
+        {
+            if (!NAME.equals(interfaceName))
+            {
+                throw new UnknownInterface(interfaceName);
+            }
+            return Collections.singletonMap(INHIBITED, new Variant<>(isInhibited()));
+        }
+
+        @Override
+        public String getObjectPath()
+        {
+            return OBJECT_PATH;
+        }
+
+    }
+
+}
@@ -0,0 +1,600 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.DBusMatchRule;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Routes {@link Notifications} signals to the {@link NotificationListener} registered for the notification id.
+ * <p/>
+ * A single handler is installed per signal type, regardless of how many notifications are being listened to.
+ * Listeners are removed automatically when {@link Notifications.NotificationClosed} is received.
+ * <p/>
+ * Every signal received is reported to the {@link NotificationMetrics}, whether or not a listener is registered.
+ * <p/>
+ * Listeners are called on the connection's signal thread unless a callback executor is given, in which case
+ * listeners of different notifications run in parallel while each notification's signals are delivered in order.
+ * <p/>
+ * Signals are broadcast to every client on the bus, so each client receives the signals of every other app's
+ * notifications. {@link #filtered} subscribes only to signals sent by the current owner of {@link Notifications#NAME}
+ * on {@link Notifications#OBJECT_PATH}, and reads the id of each signal straight from the message before decoding
+ * it, so the signals of notifications without a listener cost no more than a map lookup.
+ * <p/>
+ * The server may close a notification before the call which opened it has returned its id. While a {@link #reserve()
+ * reservation} is held, the close signals of ids without a listener are kept, and delivered to the listener as soon as
+ * it is registered. Each is kept only until the reservations held when it arrived are released, and at most
+ * {@link #MAX_EARLY_CLOSES} are kept at once.
+ *
+ * @see CallbackExecutors
+ */
+public class NotificationSignals implements AutoCloseable
+{
+
+    /**
+     * The most close signals kept for reservations, beyond which the oldest are dropped.
+     */
+    public static final int MAX_EARLY_CLOSES = 1024;
+
+    private final Map<UInt32, NotificationListener> listeners = new ConcurrentHashMap<>();
+
+    private static final List<Class<? extends DBusSignal>> SIGNAL_TYPES = List.of(
+            Notifications.NotificationClosed.class,
+            Notifications.ActionInvoked.class,
+            Notifications.ActivationToken.class,
+            Notifications.KdeNotificationReplied.class);
+
+    private static final String DBUS_NAME = "org.freedesktop.DBus";
+
+    private static final String DBUS_PATH = "/org/freedesktop/DBus";
+
+    private static final byte[] NAME_BYTES = Notifications.NAME.getBytes(StandardCharsets.UTF_8);
+
+    private final List<AutoCloseable> handlers = new ArrayList<>(4);
+
+    private final NotificationMetrics metrics;
+
+    private final OrderedExecutor callbacks;
+
+    /**
+     * Close signals of ids without a listener, in the order they arrived. Guards itself and the reservations.
+     */
+    private final Map<UInt32, EarlyClose> early = new LinkedHashMap<UInt32, EarlyClose>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UInt32, EarlyClose> eldest)
+        {
+            return size() > MAX_EARLY_CLOSES;
+        }
+    };
+
+    /**
+     * The tickets of the reservations held, oldest first.
+     */
+    private final NavigableSet<Long> reservations = new TreeSet<>();
+
+    private long tickets;
+
+    /**
+     * The number of reservations held, read without the lock.
+     */
+    private volatile int held;
+
+    public NotificationSignals(AbstractConnection connection) throws DBusException
+    {
+        this(connection, NotificationMetrics.NOOP);
+    }
+
+    public NotificationSignals(AbstractConnection connection, NotificationMetrics metrics) throws DBusException
+    {
+        this(connection, metrics, null);
+    }
+
+    /**
+     * @param callbacks runs the listeners, or null to run them on the signal thread
+     */
+    public NotificationSignals(AbstractConnection connection, NotificationMetrics metrics, Executor callbacks)
+            throws DBusException
+    {
+        this(metrics, callbacks);
+        try
+        {
+            this.handlers.add(connection.addSigHandler(Notifications.NotificationClosed.class, this::dispatch));
+            this.handlers.add(connection.addSigHandler(Notifications.ActionInvoked.class, this::dispatch));
+            this.handlers.add(connection.addSigHandler(Notifications.ActivationToken.class, this::dispatch));
+            this.handlers.add(connection.addSigHandler(Notifications.KdeNotificationReplied.class, this::dispatch));
+        } catch (DBusException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    private NotificationSignals(NotificationMetrics metrics, Executor callbacks)
+    {
+        this.metrics = metrics;
+        this.callbacks = callbacks == null ? null : new OrderedExecutor(callbacks);
+    }
+
+    /**
+     * Subscribes only to the signals of the current owner of {@link Notifications#NAME}, following the name to its
+     * next owner when the server restarts, and decodes only the signals of notifications with a listener.
+     *
+     * @param callbacks runs the listeners, or null to run them on the signal thread
+     */
+    public static NotificationSignals filtered(DBusConnection connection, NotificationMetrics metrics,
+            Executor callbacks) throws DBusException
+    {
+        NotificationSignals signals = new NotificationSignals(metrics, callbacks);
+        try
+        {
+            signals.handlers.add(signals.new OwnerBinding(connection));
+        } catch (DBusException e)
+        {
+            signals.close();
+            throw e;
+        }
+        return signals;
+    }
+
+    /**
+     * Registers the listener for the notification, replacing any listener previously registered for the id.
+     *
+     * @return the listener previously registered for the id, or null
+     */
+    public NotificationListener register(UInt32 id, NotificationListener listener)
+    {
+        NotificationListener previous = this.listeners.put(id, listener);
+        EarlyClose closed = null;
+        if (this.held > 0)
+        {
+            synchronized (this.early)
+            {
+                closed = this.early.remove(id);
+            }
+        }
+        // only whoever removes the listener delivers the close, whether that's here or the signal thread
+        if (closed != null && this.listeners.remove(id, listener))
+        {
+            Notifications.NotificationClosed signal = closed.signal;
+            deliver(id, () -> listener.onClosed(signal));
+        }
+        return previous;
+    }
+
+    /**
+     * Keeps the close signals of ids without a listener until the reservation is released, so a listener registered
+     * for the id returned by {@link Notifications#open} still receives a close which arrived first.
+     * <pre>
+     * try (NotificationSignals.Reservation reservation = signals.reserve())
+     * {
+     *     signals.register(notification.send(notifications, replaced), listener);
+     * }
+     * </pre>
+     */
+    public Reservation reserve()
+    {
+        long ticket;
+        synchronized (this.early)
+        {
+            ticket = ++this.tickets;
+            this.reservations.add(ticket);
+            this.held = this.reservations.size();
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true))
+            {
+                release(ticket);
+            }
+        };
+    }
+
+    private void release(long ticket)
+    {
+        synchronized (this.early)
+        {
+            this.reservations.remove(ticket);
+            this.held = this.reservations.size();
+            // closes which arrived before the oldest reservation still held can't be for any of them
+            long oldest = this.reservations.isEmpty() ? Long.MAX_VALUE : this.reservations.first();
+            Iterator<EarlyClose> iterator = this.early.values().iterator();
+            while (iterator.hasNext() && iterator.next().ticket < oldest)
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the listener that was registered for the id, or null
+     */
+    public NotificationListener unregister(UInt32 id)
+    {
+        return this.listeners.remove(id);
+    }
+
+    /**
+     * Unregisters the listener only if it is the one currently registered for the id.
+     */
+    public boolean unregister(UInt32 id, NotificationListener listener)
+    {
+        return this.listeners.remove(id, listener);
+    }
+
+    public boolean isRegistered(UInt32 id)
+    {
+        return this.listeners.containsKey(id);
+    }
+
+    /**
+     * @return the number of notifications with a registered listener
+     */
+    public int size()
+    {
+        return this.listeners.size();
+    }
+
+    void dispatch(Notifications.NotificationClosed signal)
+    {
+        this.metrics.signalReceived(Notifications.NotificationClosed.class);
+        UInt32 id = signal.getId();
+        NotificationListener listener = this.listeners.remove(id);
+        if (listener == null && this.held > 0)
+        {
+            // the listener may be registered once the call that opened the notification returns
+            EarlyClose closed;
+            synchronized (this.early)
+            {
+                if (this.reservations.isEmpty())
+                {
+                    return;
+                }
+                // kept for the reservations held now, so it is ordered after every close kept before it
+                closed = new EarlyClose(signal, this.tickets);
+                this.early.remove(id);
+                this.early.put(id, closed);
+            }
+            listener = this.listeners.remove(id);
+            if (listener != null)
+            {
+                synchronized (this.early)
+                {
+                    this.early.remove(id, closed);
+                }
+            }
+        }
+        if (listener != null)
+        {
+            NotificationListener closed = listener;
+            deliver(id, () -> closed.onClosed(signal));
+        }
+    }
+
+    void dispatch(Notifications.ActionInvoked signal)
+    {
+        this.metrics.signalReceived(Notifications.ActionInvoked.class);
+        NotificationListener listener = this.listeners.get(signal.getId());
+        if (listener != null)
+        {
+            deliver(signal.getId(), () -> listener.onActionInvoked(signal));
+        }
+    }
+
+    void dispatch(Notifications.ActivationToken signal)
+    {
+        this.metrics.signalReceived(Notifications.ActivationToken.class);
+        NotificationListener listener = this.listeners.get(signal.getId());
+        if (listener != null)
+        {
+            deliver(signal.getId(), () -> listener.onActivationToken(signal));
+        }
+    }
+
+    void dispatch(Notifications.KdeNotificationReplied signal)
+    {
+        this.metrics.signalReceived(Notifications.KdeNotificationReplied.class);
+        NotificationListener listener = this.listeners.get(signal.getId());
+        if (listener != null)
+        {
+            deliver(signal.getId(), () -> listener.onReplied(signal));
+        }
+    }
+
+    /**
+     * Dispatches a signal which has not been decoded, decoding it only if a listener is registered for its id.
+     */
+    void dispatch(DBusSignal signal)
+    {
+        Class<? extends DBusSignal> type = signalType(signal.getName());
+        UInt32 id = peekId(signal);
+        if (type == null || id == null)
+        {
+            return;
+        }
+        if (!this.listeners.containsKey(id)
+                && (type != Notifications.NotificationClosed.class || this.held == 0))
+        {
+            this.metrics.signalReceived(type);
+            return;
+        }
+        try
+        {
+            Object[] args = signal.getParameters();
+            String path = signal.getPath();
+            switch (signal.getName())
+            {
+                case "NotificationClosed":
+                    dispatch(new Notifications.NotificationClosed(path, id, (UInt32) args[1]));
+                    break;
+                case "ActionInvoked":
+                    dispatch(new Notifications.ActionInvoked(path, id, (String) args[1]));
+                    break;
+                case "ActivationToken":
+                    dispatch(new Notifications.ActivationToken(path, id, (String) args[1]));
+                    break;
+                case "NotificationReplied":
+                    dispatch(new Notifications.KdeNotificationReplied(path, id, (String) args[1]));
+                    break;
+                default:
+                    break;
+            }
+        } catch (DBusException | RuntimeException e)
+        {
+            // not a signal of the notifications interface
+        }
+    }
+
+    /**
+     * @return the first argument of the signal read from its body, or null if it is not a {@code UInt32}
+     */
+    static UInt32 peekId(DBusSignal signal)
+    {
+        String signature = signal.getSig();
+        byte[] body = body(signal);
+        if (signature == null || !signature.startsWith("u") || body == null || body.length < 4)
+        {
+            return null;
+        }
+        return new UInt32(Message.demarshallint(body, 0, signal.getEndianess(), 4));
+    }
+
+    /**
+     * @return true if the first argument of the signal is the string given, read without decoding the body
+     */
+    static boolean isFirstArgument(DBusSignal signal, byte[] value)
+    {
+        String signature = signal.getSig();
+        byte[] body = body(signal);
+        if (signature == null || !signature.startsWith("s") || body == null || body.length < 4 + value.length)
+        {
+            return false;
+        }
+        if (Message.demarshallint(body, 0, signal.getEndianess(), 4) != value.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++)
+        {
+            if (body[4 + i] != value[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] body(DBusSignal signal)
+    {
+        // received messages are split into the fixed header, the header fields and the body
+        byte[][] wire = signal.getWireData();
+        return wire == null || wire.length < 3 ? null : wire[2];
+    }
+
+    private static Class<? extends DBusSignal> signalType(String member)
+    {
+        switch (member)
+        {
+            case "NotificationClosed":
+                return Notifications.NotificationClosed.class;
+            case "ActionInvoked":
+                return Notifications.ActionInvoked.class;
+            case "ActivationToken":
+                return Notifications.ActivationToken.class;
+            case "NotificationReplied":
+                return Notifications.KdeNotificationReplied.class;
+            default:
+                return null;
+        }
+    }
+
+    private void deliver(UInt32 id, Runnable callback)
+    {
+        if (this.callbacks == null)
+        {
+            callback.run();
+        } else
+        {
+            this.callbacks.execute(id, callback);
+        }
+    }
+
+    /**
+     * Removes the signal handlers from the connection. Registered listeners will receive no further signals.
+     */
+    @Override
+    public void close()
+    {
+        for (AutoCloseable handler : this.handlers)
+        {
+            try
+            {
+                handler.close();
+            } catch (Exception ignored)
+            {
+                // the connection may already be closed
+            }
+        }
+        this.handlers.clear();
+        this.listeners.clear();
+        synchronized (this.early)
+        {
+            this.early.clear();
+        }
+    }
+
+    /**
+     * A close signal kept for the reservations whose tickets are at most its own.
+     */
+    private static final class EarlyClose
+    {
+
+        private final Notifications.NotificationClosed signal;
+
+        private final long ticket;
+
+        EarlyClose(Notifications.NotificationClosed signal, long ticket)
+        {
+            this.signal = signal;
+            this.ticket = ticket;
+        }
+
+    }
+
+    /**
+     * Held while a notification is being opened, see {@link #reserve()}.
+     */
+    public interface Reservation extends AutoCloseable
+    {
+
+        /**
+         * Releases the reservation. Calling it again has no effect.
+         */
+        @Override
+        void close();
+
+    }
+
+    /**
+     * Keeps one match rule per signal type bound to the unique name of the owner of {@link Notifications#NAME}, so
+     * the bus doesn't send the signals of other senders at all.
+     */
+    private final class OwnerBinding implements AutoCloseable
+    {
+
+        private final DBusConnection connection;
+
+        private final AutoCloseable ownerChanges;
+
+        private final List<AutoCloseable> bound = new ArrayList<>(SIGNAL_TYPES.size());
+
+        private String owner;
+
+        OwnerBinding(DBusConnection connection) throws DBusException
+        {
+            this.connection = connection;
+            this.ownerChanges = connection.addGenericSigHandler(new DBusMatchRule(DBus.NameOwnerChanged.class),
+                    this::onNameOwnerChanged);
+            String current;
+            try
+            {
+                current = connection.getRemoteObject(DBUS_NAME, DBUS_PATH, DBus.class)
+                        .GetNameOwner(Notifications.NAME);
+            } catch (DBusExecutionException e)
+            {
+                // no server yet, bound when one takes the name
+                current = null;
+            }
+            bind(current);
+        }
+
+        private void onNameOwnerChanged(DBusSignal signal)
+        {
+            // most name changes are other clients connecting, so check the name before decoding
+            if (!isFirstArgument(signal, NAME_BYTES))
+            {
+                return;
+            }
+            try
+            {
+                bind((String) signal.getParameters()[2]);
+            } catch (DBusException e)
+            {
+                bind(null);
+            }
+        }
+
+        private synchronized void bind(String owner)
+        {
+            if (owner != null && owner.isEmpty())
+            {
+                owner = null;
+            }
+            if (Objects.equals(owner, this.owner))
+            {
+                return;
+            }
+            unbind();
+            this.owner = owner;
+            if (owner == null)
+            {
+                return;
+            }
+            for (Class<? extends DBusSignal> type : SIGNAL_TYPES)
+            {
+                try
+                {
+                    DBusMatchRule rule = new DBusMatchRule(type, owner, Notifications.OBJECT_PATH);
+                    this.bound.add(this.connection.addGenericSigHandler(rule, NotificationSignals.this::dispatch));
+                } catch (DBusException e)
+                {
+                    // the connection is closing
+                }
+            }
+        }
+
+        private void unbind()
+        {
+            for (AutoCloseable handler : this.bound)
+            {
+                try
+                {
+                    handler.close();
+                } catch (Exception ignored)
+                {
+                    // the connection may already be closed
+                }
+            }
+            this.bound.clear();
+        }
+
+        @Override
+        public synchronized void close() throws Exception
+        {
+            unbind();
+            this.owner = null;
+            this.ownerChanges.close();
+        }
+
+    }
+
+}
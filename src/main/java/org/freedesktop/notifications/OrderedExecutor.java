@@ -0,0 +1,89 @@
+package org.freedesktop.notifications;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on another executor, one at a time and in submission order for each key, while tasks with different
+ * keys run in parallel.
+ * <p/>
+ * Only keys with tasks still pending are remembered. A task which throws is reported to the uncaught exception
+ * handler of the thread that ran it, and a task the delegate rejects is reported to the handler of the thread that
+ * submitted it. Neither prevents later tasks with the same key from running.
+ */
+public class OrderedExecutor
+{
+
+    private final Executor delegate;
+
+    private final Map<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public OrderedExecutor(Executor delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    public void execute(Object key, Runnable task)
+    {
+        CompletableFuture<Void> tail = new CompletableFuture<>();
+        CompletableFuture<Void> previous = this.tails.put(key, tail);
+        if (previous == null)
+        {
+            submit(task, tail);
+        } else
+        {
+            // the previous task always completes its future normally, whatever became of it
+            previous.whenComplete((result, failure) -> submit(task, tail));
+        }
+        tail.whenComplete((result, failure) -> this.tails.remove(key, tail));
+    }
+
+    /**
+     * @return the number of keys with tasks that have not completed
+     */
+    public int getPendingKeys()
+    {
+        return this.tails.size();
+    }
+
+    private void submit(Runnable task, CompletableFuture<Void> done)
+    {
+        try
+        {
+            this.delegate.execute(() -> {
+                try
+                {
+                    run(task);
+                } finally
+                {
+                    done.complete(null);
+                }
+            });
+        } catch (RuntimeException e)
+        {
+            // rejected, the next task of the key runs regardless
+            report(e);
+            done.complete(null);
+        }
+    }
+
+    private static void run(Runnable task)
+    {
+        try
+        {
+            task.run();
+        } catch (RuntimeException | Error e)
+        {
+            report(e);
+        }
+    }
+
+    private static void report(Throwable e)
+    {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends progress reports as notifications, at most once per frame interval per task.
+ * <p/>
+ * Each {@link ProgressStream} replaces a single notification. Reports made between frames are coalesced so only
+ * the latest is sent, and the final report is always sent as soon as the task completes.
+ */
+public class ProgressNotifications implements AutoCloseable
+{
+
+    public static final long DEFAULT_FRAME_INTERVAL_MILLIS = 100;
+
+    @Getter
+    private final Notifications notifications;
+
+    @Getter
+    private final long frameIntervalMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean ownsScheduler;
+
+    private final Set<ProgressStream> active = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledFuture<?> ticker;
+
+    public ProgressNotifications(Notifications notifications)
+    {
+        this(notifications, DEFAULT_FRAME_INTERVAL_MILLIS);
+    }
+
+    public ProgressNotifications(Notifications notifications, long frameIntervalMillis)
+    {
+        this(notifications, frameIntervalMillis, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ProgressNotifications");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    public ProgressNotifications(
+            Notifications notifications, long frameIntervalMillis, ScheduledExecutorService scheduler)
+    {
+        this(notifications, frameIntervalMillis, scheduler, false);
+    }
+
+    private ProgressNotifications(
+            Notifications notifications,
+            long frameIntervalMillis,
+            ScheduledExecutorService scheduler,
+            boolean ownsScheduler)
+    {
+        this.notifications = notifications;
+        this.frameIntervalMillis = frameIntervalMillis;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.ticker = scheduler.scheduleAtFixedRate(this::frame,
+                frameIntervalMillis,
+                frameIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a task. Nothing is sent until the first report.
+     *
+     * @param notification the app name, icon, actions and hints used for every report
+     */
+    public ProgressStream start(Notification notification)
+    {
+        ProgressStream stream = new ProgressStream(this, notification);
+        this.active.add(stream);
+        return stream;
+    }
+
+    /**
+     * @return the number of tasks that have not completed
+     */
+    public int size()
+    {
+        return this.active.size();
+    }
+
+    void completed(ProgressStream stream)
+    {
+        this.active.remove(stream);
+    }
+
+    private void frame()
+    {
+        for (ProgressStream stream : this.active)
+        {
+            try
+            {
+                stream.flush();
+            } catch (RuntimeException ignored)
+            {
+                // the next frame retries with the latest report
+            }
+        }
+    }
+
+    /**
+     * Stops sending frames. Reports that have not been sent are discarded.
+     */
+    @Override
+    public void close()
+    {
+        this.ticker.cancel(false);
+        this.active.clear();
+        if (this.ownsScheduler)
+        {
+            this.scheduler.shutdown();
+        }
+    }
+
+}
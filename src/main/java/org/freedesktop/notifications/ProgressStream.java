@@ -0,0 +1,177 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The progress notification of a single task.
+ * <p/>
+ * {@link #report} may be called from any thread at any rate; the latest report is sent on the next frame of the
+ * owning {@link ProgressNotifications}. {@link #complete} sends its report immediately and ends the stream.
+ *
+ * @see ProgressNotifications#start(Notification)
+ */
+public class ProgressStream
+{
+
+    private final ProgressNotifications owner;
+
+    private final Notification template;
+
+    private final AtomicReference<Report> pending = new AtomicReference<>();
+
+    private final AtomicLong reports = new AtomicLong();
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private boolean finished;
+
+    @Getter
+    private volatile UInt32 id = new UInt32(0);
+
+    /**
+     * The number of notifications sent
+     */
+    @Getter
+    private volatile long sent;
+
+    ProgressStream(ProgressNotifications owner, Notification template)
+    {
+        this.owner = owner;
+        // freeze once so each frame only copies the progress value
+        this.template = template.toBuilder()
+                .actions(template.getActions().freeze())
+                .hints(template.getHints().freeze())
+                .build();
+    }
+
+    /**
+     * @param percent progress between 0 and 100
+     */
+    public void report(int percent, String summary, String body)
+    {
+        if (this.completed.get())
+        {
+            return;
+        }
+        this.reports.incrementAndGet();
+        this.pending.set(new Report(percent, summary, body));
+    }
+
+    public void report(int percent, String body)
+    {
+        report(percent, this.template.getSummary(), body);
+    }
+
+    public void report(int percent)
+    {
+        report(percent, this.template.getSummary(), this.template.getBody());
+    }
+
+    /**
+     * Sends the final state of the task immediately. Later reports are ignored.
+     *
+     * @param percent progress between 0 and 100, or -1 to remove the progress bar
+     */
+    public void complete(int percent, String summary, String body)
+    {
+        // only the first call sends, however many race to complete
+        if (!this.completed.compareAndSet(false, true))
+        {
+            return;
+        }
+        this.reports.incrementAndGet();
+        try
+        {
+            synchronized (this)
+            {
+                this.pending.set(null);
+                try
+                {
+                    send(new Report(percent, summary, body));
+                } finally
+                {
+                    this.finished = true;
+                }
+            }
+        } finally
+        {
+            this.owner.completed(this);
+        }
+    }
+
+    public boolean isCompleted()
+    {
+        return this.completed.get();
+    }
+
+    /**
+     * @return the number of reports made, including those coalesced away
+     */
+    public long getReports()
+    {
+        return this.reports.get();
+    }
+
+    synchronized void flush()
+    {
+        if (this.finished)
+        {
+            return;
+        }
+        Report report = this.pending.getAndSet(null);
+        if (report == null)
+        {
+            return;
+        }
+        try
+        {
+            send(report);
+        } catch (RuntimeException e)
+        {
+            // keep the report unless a newer one has replaced it
+            this.pending.compareAndSet(null, report);
+            throw e;
+        }
+    }
+
+    private void send(Report report)
+    {
+        Notifications.Hints hints = new Notifications.Hints(this.template.getHints());
+        if (report.percent >= 0)
+        {
+            hints.set(Notifications.HintKey.VALUE, Math.max(0, Math.min(100, report.percent)));
+        }
+        Notification notification = this.template.toBuilder()
+                .summary(report.summary)
+                .body(report.body)
+                .hints(hints)
+                .build();
+        this.id = notification.send(this.owner.getNotifications(), this.id);
+        this.sent++;
+    }
+
+    private static final class Report
+    {
+
+        private final int percent;
+
+        private final String summary;
+
+        private final String body;
+
+        Report(int percent, String summary, String body)
+        {
+            this.percent = percent;
+            this.summary = summary;
+            this.body = body;
+        }
+
+    }
+
+}
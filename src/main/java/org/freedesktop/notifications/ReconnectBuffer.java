@@ -0,0 +1,414 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.errors.NoReply;
+import org.freedesktop.dbus.errors.ServiceUnknown;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends notifications without losing them while the notification server restarts, such as when the desktop shell
+ * crashes and takes {@link Notifications#NAME} with it.
+ * <p/>
+ * Submitted notifications wait in lock-free queues, one per {@link Notifications.Urgency}, and a single thread sends
+ * them in the order they were submitted. When a call fails because nobody owns the name, sending pauses until a
+ * {@code NameOwnerChanged} signal announces a new owner, or the retry interval passes, and resumes with the
+ * notification that failed. Callers never wait for the server.
+ * <p/>
+ * At most {@code capacity} notifications other than {@link Notifications.Urgency#CRITICAL} ones wait at once, besides
+ * the one being retried; the {@link OverflowPolicy} decides which one is dropped when another arrives. Critical
+ * notifications are never dropped. The futures of dropped notifications fail with {@link RejectedExecutionException}.
+ */
+public class ReconnectBuffer implements AutoCloseable
+{
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final long DEFAULT_RETRY_MILLIS = 1000;
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    private static final String SERVICE_UNKNOWN = "org.freedesktop.DBus.Error.ServiceUnknown";
+
+    private static final String NAME_HAS_NO_OWNER = "org.freedesktop.DBus.Error.NameHasNoOwner";
+
+    @Getter
+    private final Notifications notifications;
+
+    private final String busName;
+
+    @Getter
+    private final int capacity;
+
+    @Getter
+    private final OverflowPolicy policy;
+
+    private final long retryMillis;
+
+    /**
+     * Waiting notifications by {@link Notifications.Urgency#ordinal()}.
+     */
+    @SuppressWarnings("unchecked")
+    private final Queue<Entry>[] queues = new Queue[Notifications.Urgency.values().length];
+
+    private final AtomicInteger bounded = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong[] dropped = new AtomicLong[Notifications.Urgency.values().length];
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final ScheduledExecutorService sender;
+
+    private final AutoCloseable handler;
+
+    /**
+     * The notification whose call found no server, sent again before any other. Only changed by the sender.
+     */
+    private volatile Entry retry;
+
+    private volatile boolean available = true;
+
+    private volatile boolean closed;
+
+    public ReconnectBuffer(AbstractConnection connection) throws DBusException
+    {
+        this(connection, new DirectNotifications(connection), DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST_LOWEST,
+                DEFAULT_RETRY_MILLIS);
+    }
+
+    /**
+     * @param connection    watched for changes of the owner of {@link Notifications#NAME}
+     * @param notifications the server the notifications are sent to
+     * @param capacity      the number of notifications that may wait, excluding critical ones
+     * @param retryMillis   how long to wait for a new owner before trying again regardless
+     */
+    public ReconnectBuffer(
+            AbstractConnection connection,
+            Notifications notifications,
+            int capacity,
+            OverflowPolicy policy,
+            long retryMillis) throws DBusException
+    {
+        this(connection, Notifications.NAME, notifications, capacity, policy, retryMillis);
+    }
+
+    ReconnectBuffer(
+            AbstractConnection connection,
+            String busName,
+            Notifications notifications,
+            int capacity,
+            OverflowPolicy policy,
+            long retryMillis) throws DBusException
+    {
+        this.notifications = notifications;
+        this.busName = busName;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.retryMillis = retryMillis;
+        for (int i = 0; i < this.queues.length; i++)
+        {
+            this.queues[i] = new ConcurrentLinkedQueue<>();
+            this.dropped[i] = new AtomicLong();
+        }
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReconnectBuffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.handler = connection.addSigHandler(DBus.NameOwnerChanged.class, this::onNameOwnerChanged);
+    }
+
+    /**
+     * @return a future completed with the id of the notification once it is sent
+     */
+    public CompletableFuture<UInt32> submit(Notification notification)
+    {
+        if (this.closed)
+        {
+            throw new RejectedExecutionException("Buffer is closed");
+        }
+        Notifications.Urgency urgency = notification.getUrgency();
+        Entry entry = new Entry(this.sequence.getAndIncrement(), notification, urgency);
+        if (urgency != Notifications.Urgency.CRITICAL
+                && this.bounded.incrementAndGet() > this.capacity
+                && !makeRoom(urgency))
+        {
+            this.bounded.decrementAndGet();
+            return drop(entry);
+        }
+        this.queues[urgency.ordinal()].add(entry);
+        schedule();
+        return entry.future;
+    }
+
+    /**
+     * @return false while the server is known to be missing
+     */
+    public boolean isAvailable()
+    {
+        return this.available;
+    }
+
+    /**
+     * @return the number of notifications waiting to be sent
+     */
+    public int getBuffered()
+    {
+        int buffered = this.retry == null ? 0 : 1;
+        for (Queue<Entry> queue : this.queues)
+        {
+            buffered += queue.size();
+        }
+        return buffered;
+    }
+
+    public long getDropped(Notifications.Urgency urgency)
+    {
+        return this.dropped[urgency.ordinal()].get();
+    }
+
+    public long getSent()
+    {
+        return this.sent.get();
+    }
+
+    public long getFailed()
+    {
+        return this.failed.get();
+    }
+
+    private void onNameOwnerChanged(DBus.NameOwnerChanged signal)
+    {
+        if (this.busName.equals(signal.name))
+        {
+            this.available = !signal.newOwner.isEmpty();
+            schedule();
+        }
+    }
+
+    /**
+     * Drops the oldest waiting notification of the lowest urgency, up to that of the one being submitted.
+     *
+     * @return false if the notification being submitted should be dropped instead
+     */
+    private boolean makeRoom(Notifications.Urgency urgency)
+    {
+        if (this.policy == OverflowPolicy.DROP_NEWEST)
+        {
+            return false;
+        }
+        for (int i = Notifications.Urgency.LOW.ordinal(); i <= urgency.ordinal(); i++)
+        {
+            Entry oldest = this.queues[i].poll();
+            if (oldest != null)
+            {
+                this.bounded.decrementAndGet();
+                drop(oldest);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CompletableFuture<UInt32> drop(Entry entry)
+    {
+        this.dropped[entry.urgency.ordinal()].incrementAndGet();
+        entry.future.completeExceptionally(new RejectedExecutionException("Reconnect buffer is full"));
+        return entry.future;
+    }
+
+    /**
+     * Starts the sender unless it is already running or the server is missing.
+     */
+    private void schedule()
+    {
+        if (this.available && !this.closed && this.draining.compareAndSet(false, true))
+        {
+            try
+            {
+                this.sender.execute(this::drain);
+            } catch (RejectedExecutionException e)
+            {
+                this.draining.set(false);
+            }
+        }
+    }
+
+    private void drain()
+    {
+        try
+        {
+            while (this.available && !this.closed)
+            {
+                Entry entry = this.retry != null ? this.retry : pollOldest();
+                this.retry = null;
+                if (entry == null)
+                {
+                    break;
+                }
+                try
+                {
+                    UInt32 id = entry.notification.send(this.notifications, NO_REPLACE);
+                    this.sent.incrementAndGet();
+                    entry.future.complete(id);
+                } catch (DBusExecutionException e)
+                {
+                    if (!isMissingServer(e))
+                    {
+                        this.failed.incrementAndGet();
+                        entry.future.completeExceptionally(e);
+                        continue;
+                    }
+                    this.retry = entry;
+                    this.available = false;
+                    // the new owner may have been announced before this call failed
+                    this.sender.schedule(() -> {
+                        this.available = true;
+                        schedule();
+                    }, this.retryMillis, TimeUnit.MILLISECONDS);
+                } catch (RuntimeException e)
+                {
+                    this.failed.incrementAndGet();
+                    entry.future.completeExceptionally(e);
+                }
+            }
+        } finally
+        {
+            this.draining.set(false);
+        }
+        // a notification submitted after the last poll, but before the sender stopped, would otherwise wait
+        if (this.retry != null || getBuffered() > 0)
+        {
+            schedule();
+        }
+    }
+
+    /**
+     * @return the waiting notification that was submitted first, of any urgency
+     */
+    private Entry pollOldest()
+    {
+        while (true)
+        {
+            Queue<Entry> oldestQueue = null;
+            Entry oldest = null;
+            for (Queue<Entry> queue : this.queues)
+            {
+                Entry head = queue.peek();
+                if (head != null && (oldest == null || head.sequence < oldest.sequence))
+                {
+                    oldestQueue = queue;
+                    oldest = head;
+                }
+            }
+            if (oldest == null)
+            {
+                return null;
+            }
+            // lost to makeRoom otherwise
+            if (oldestQueue.remove(oldest))
+            {
+                if (oldest.urgency != Notifications.Urgency.CRITICAL)
+                {
+                    this.bounded.decrementAndGet();
+                }
+                return oldest;
+            }
+        }
+    }
+
+    private static boolean isMissingServer(DBusExecutionException e)
+    {
+        return e instanceof ServiceUnknown
+                || e instanceof NoReply
+                || SERVICE_UNKNOWN.equals(e.getType())
+                || NAME_HAS_NO_OWNER.equals(e.getType());
+    }
+
+    /**
+     * Stops sending. Notifications still waiting are failed with {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() throws InterruptedException
+    {
+        this.closed = true;
+        try
+        {
+            this.handler.close();
+        } catch (Exception e)
+        {
+            // the connection is already gone
+        }
+        this.sender.shutdownNow();
+        this.sender.awaitTermination(5, TimeUnit.SECONDS);
+        if (this.retry != null)
+        {
+            this.retry.future.completeExceptionally(new RejectedExecutionException("Buffer is closed"));
+        }
+        for (Queue<Entry> queue : this.queues)
+        {
+            for (Entry entry = queue.poll(); entry != null; entry = queue.poll())
+            {
+                entry.future.completeExceptionally(new RejectedExecutionException("Buffer is closed"));
+            }
+        }
+    }
+
+    public enum OverflowPolicy
+    {
+
+        /**
+         * Drop the oldest low urgency notification, or if there is none the oldest of the next urgency, but never one
+         * more urgent than the notification being submitted.
+         */
+        DROP_OLDEST_LOWEST,
+
+        /**
+         * Drop the notification being submitted.
+         */
+        DROP_NEWEST
+
+    }
+
+    private static final class Entry
+    {
+
+        private final long sequence;
+
+        private final Notification notification;
+
+        private final Notifications.Urgency urgency;
+
+        private final CompletableFuture<UInt32> future = new CompletableFuture<>();
+
+        Entry(long sequence, Notification notification, Notifications.Urgency urgency)
+        {
+            this.sequence = sequence;
+            this.notification = notification;
+            this.urgency = urgency;
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cached view of {@link Notifications#getCapabilities()} and {@link Notifications#getServerInformation()}.
+ * <p/>
+ * The server is queried on first use and again only after {@link DBus.NameOwnerChanged} reports that
+ * {@link Notifications#NAME} has a new owner, so capability checks normally cost no bus traffic.
+ */
+public class ServerCapabilities implements AutoCloseable
+{
+
+    private final Notifications notifications;
+
+    private final AutoCloseable ownerHandler;
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private volatile Snapshot snapshot;
+
+    private volatile String owner;
+
+    public ServerCapabilities(AbstractConnection connection, Notifications notifications) throws DBusException
+    {
+        this.notifications = notifications;
+        this.ownerHandler = connection.addSigHandler(DBus.NameOwnerChanged.class, signal -> {
+            if (Notifications.NAME.equals(signal.name))
+            {
+                this.owner = signal.newOwner.isEmpty() ? null : signal.newOwner;
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * @param capability one of {@link Notifications.Capabilities} or a vendor specific capability
+     */
+    public boolean supports(String capability)
+    {
+        return snapshot().all.contains(capability);
+    }
+
+    /**
+     * @return every capability reported by the server
+     */
+    public Set<String> getCapabilities()
+    {
+        return snapshot().all;
+    }
+
+    public Notifications.ServerInformation getServerInformation()
+    {
+        return snapshot().information;
+    }
+
+    /**
+     * @return an adapter for the capabilities of the current server, replaced along with them
+     */
+    public ContentAdapter getContentAdapter()
+    {
+        return snapshot().adapter;
+    }
+
+    /**
+     * @return true if the hint is part of the specification version implemented by the server, or is a vendor hint
+     */
+    public boolean supports(Notifications.HintKey<?> hint)
+    {
+        return hint.getVersion() < 0 || parseVersion(Double.toString(hint.getVersion())) <= snapshot().specVersion;
+    }
+
+    /**
+     * @return the unique bus name that owned {@link Notifications#NAME} at the last owner change, or null if no
+     * change has been observed or the name currently has no owner
+     */
+    public String getOwner()
+    {
+        return this.owner;
+    }
+
+    /**
+     * Discards the cached values. The server is queried again on next use.
+     */
+    public void invalidate()
+    {
+        this.generation.incrementAndGet();
+        this.snapshot = null;
+    }
+
+    private Snapshot snapshot()
+    {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null)
+        {
+            snapshot = load();
+        }
+        return snapshot;
+    }
+
+    private synchronized Snapshot load()
+    {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null)
+        {
+            int generation = this.generation.get();
+            snapshot = new Snapshot(this.notifications.getCapabilities(), this.notifications.getServerInformation());
+            // an owner change during the query may have produced values from the previous owner
+            if (generation == this.generation.get())
+            {
+                this.snapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            this.ownerHandler.close();
+        } catch (Exception ignored)
+        {
+            // the connection may already be closed
+        }
+    }
+
+    /**
+     * @return the major and minor numbers of the version packed so that versions compare as numbers, "1.10" after
+     * "1.2", or 0 if it can't be parsed
+     */
+    static long parseVersion(String version)
+    {
+        if (version == null)
+        {
+            return 0;
+        }
+        String[] parts = version.split("\\.", 3);
+        try
+        {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major < 0 || minor < 0 ? 0 : ((long) major << 32) | minor;
+        } catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    private static final class Snapshot
+    {
+
+        private final Set<String> all;
+
+        private final Notifications.ServerInformation information;
+
+        private final long specVersion;
+
+        private final ContentAdapter adapter;
+
+        Snapshot(String[] capabilities, Notifications.ServerInformation information)
+        {
+            this.all = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(capabilities)));
+            this.information = information;
+            this.specVersion = parseVersion(information.getSpecVersion());
+            this.adapter = new ContentAdapter(this.all);
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every measurement in memory, for applications without a metrics library or to be read by an adapter to one.
+ * <p/>
+ * Latencies are in nanoseconds.
+ */
+public class SimpleNotificationMetrics implements NotificationMetrics
+{
+
+    private final Map<Method, MethodMetrics> methods = new EnumMap<>(Method.class);
+
+    private final Map<Class<? extends DBusSignal>, LongAdder> signals = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram hints = new LatencyHistogram();
+
+    private final LatencyHistogram actions = new LatencyHistogram();
+
+    private final LatencyHistogram imageBytes = new LatencyHistogram();
+
+    public SimpleNotificationMetrics()
+    {
+        for (Method method : Method.values())
+        {
+            this.methods.put(method, new MethodMetrics());
+        }
+    }
+
+    @Override
+    public void started(Method method)
+    {
+        this.methods.get(method).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void completed(Method method, long nanos, Throwable failure)
+    {
+        MethodMetrics metrics = this.methods.get(method);
+        metrics.inFlight.decrementAndGet();
+        metrics.latency.record(nanos);
+        if (failure != null)
+        {
+            metrics.errors.increment();
+        }
+    }
+
+    @Override
+    public void signalReceived(Class<? extends DBusSignal> type)
+    {
+        this.signals.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void payload(int hints, int actions, int imageBytes)
+    {
+        this.hints.record(hints);
+        this.actions.record(actions);
+        if (imageBytes > 0)
+        {
+            this.imageBytes.record(imageBytes);
+        }
+    }
+
+    /**
+     * @return the latencies of completed calls, including those which failed
+     */
+    public LatencyHistogram getLatency(Method method)
+    {
+        return this.methods.get(method).latency;
+    }
+
+    public long getCalls(Method method)
+    {
+        return this.methods.get(method).latency.getCount();
+    }
+
+    public long getErrors(Method method)
+    {
+        return this.methods.get(method).errors.sum();
+    }
+
+    public int getInFlight(Method method)
+    {
+        return this.methods.get(method).inFlight.get();
+    }
+
+    public long getSignals(Class<? extends DBusSignal> type)
+    {
+        LongAdder count = this.signals.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return the number of hints per notification
+     */
+    public LatencyHistogram getHints()
+    {
+        return this.hints;
+    }
+
+    /**
+     * @return the number of actions per notification
+     */
+    public LatencyHistogram getActions()
+    {
+        return this.actions;
+    }
+
+    /**
+     * @return the size of the image-data hint, of notifications which have one
+     */
+    public LatencyHistogram getImageBytes()
+    {
+        return this.imageBytes;
+    }
+
+    private static final class MethodMetrics
+    {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+    }
+
+}
@@ -0,0 +1,422 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the notifications an application opened, by app name and by tags of its own choosing, so they can
+ * be closed together, such as on shutdown or when switching tenants.
+ * <p/>
+ * Bulk closes send every {@code CloseNotification} call with {@code NO_REPLY_EXPECTED}, back to back on one
+ * connection, and learn that each notification closed from its {@link Notifications.NotificationClosed} signal
+ * instead of a reply. Closing thousands of notifications takes about one round trip rather than one per
+ * notification.
+ * <p/>
+ * Notifications the server never reports closed, such as those of a server which went away without sending its
+ * signals, are no longer tracked once a bulk close gives up on them. When {@link Notifications#NAME} loses its owner,
+ * or is taken by a server other than the one last seen owning it, every notification is forgotten, since the next
+ * server knows none of them.
+ * <pre>
+ * try (TaggedNotifications tagged = new TaggedNotifications(connection))
+ * {
+ *     tagged.open(notification, "tenant-42");
+ *     Set&lt;UInt32&gt; unconfirmed = tagged.closeTag("tenant-42").join();
+ * }
+ * </pre>
+ */
+public class TaggedNotifications implements NotificationListener, AutoCloseable
+{
+
+    public static final long DEFAULT_CONFIRM_TIMEOUT_MILLIS = 5000;
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    @Getter
+    private final DirectNotifications notifications;
+
+    private final long confirmTimeoutMillis;
+
+    private final Map<UInt32, Tracked> tracked = new HashMap<>();
+
+    private final Map<String, Set<UInt32>> byApp = new HashMap<>();
+
+    private final Map<String, Set<UInt32>> byTag = new HashMap<>();
+
+    /**
+     * The bulk closes still waiting for each notification.
+     */
+    private final Map<UInt32, List<Confirmation>> confirming = new HashMap<>();
+
+    /**
+     * Calls to {@link #open} which have not yet tracked the id returned, and the ids closed while they were made.
+     */
+    private int opening;
+
+    private final Set<UInt32> closedWhileOpening = new HashSet<>();
+
+    /**
+     * The unique name of the server last seen taking the bus name, or null if none has been seen since it lost one.
+     */
+    private String owner;
+
+    private final List<AutoCloseable> handlers = new ArrayList<>(2);
+
+    public TaggedNotifications(AbstractConnection connection) throws DBusException
+    {
+        this(connection, new DirectNotifications(connection), DEFAULT_CONFIRM_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connection           receives the {@link Notifications.NotificationClosed} signals of the server
+     * @param confirmTimeoutMillis how long a bulk close waits for the signals before giving up on the rest
+     */
+    public TaggedNotifications(AbstractConnection connection, DirectNotifications notifications,
+            long confirmTimeoutMillis) throws DBusException
+    {
+        this.notifications = notifications;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.handlers.add(connection.addSigHandler(Notifications.NotificationClosed.class, this::onClosed));
+        try
+        {
+            this.handlers.add(connection.addSigHandler(DBus.NameOwnerChanged.class, this::onNameOwnerChanged));
+        } catch (DBusException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the notification and remembers it under its app name and the tags given.
+     */
+    public UInt32 open(Notification notification, String... tags)
+    {
+        synchronized (this)
+        {
+            this.opening++;
+        }
+        try
+        {
+            UInt32 id = notification.send(this.notifications, NO_REPLACE);
+            synchronized (this)
+            {
+                // the server may close it before the call returns
+                if (!this.closedWhileOpening.remove(id))
+                {
+                    track(id, notification.getAppName(), tags);
+                }
+            }
+            return id;
+        } finally
+        {
+            synchronized (this)
+            {
+                if (--this.opening == 0)
+                {
+                    this.closedWhileOpening.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remembers a notification opened by other means.
+     */
+    public synchronized void track(UInt32 id, String appName, String... tags)
+    {
+        forget(id);
+        Tracked entry = new Tracked(appName, tags);
+        this.tracked.put(id, entry);
+        this.byApp.computeIfAbsent(appName, key -> new LinkedHashSet<>()).add(id);
+        for (String tag : entry.tags)
+        {
+            this.byTag.computeIfAbsent(tag, key -> new LinkedHashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Forgets a notification without closing it.
+     *
+     * @return false if it was not tracked
+     */
+    public synchronized boolean untrack(UInt32 id)
+    {
+        return forget(id);
+    }
+
+    /**
+     * @return the open notifications with the tag, oldest first
+     */
+    public synchronized Set<UInt32> getByTag(String tag)
+    {
+        return copy(this.byTag.get(tag));
+    }
+
+    /**
+     * @return the open notifications of the app, oldest first
+     */
+    public synchronized Set<UInt32> getByApp(String appName)
+    {
+        return copy(this.byApp.get(appName));
+    }
+
+    /**
+     * @return the number of notifications tracked which have not been reported closed
+     */
+    public synchronized int size()
+    {
+        return this.tracked.size();
+    }
+
+    /**
+     * @see #closeAll(Collection)
+     */
+    public CompletableFuture<Set<UInt32>> closeTag(String tag)
+    {
+        return closeAll(getByTag(tag));
+    }
+
+    /**
+     * @see #closeAll(Collection)
+     */
+    public CompletableFuture<Set<UInt32>> closeApp(String appName)
+    {
+        return closeAll(getByApp(appName));
+    }
+
+    /**
+     * Closes every notification being tracked.
+     *
+     * @see #closeAll(Collection)
+     */
+    public CompletableFuture<Set<UInt32>> closeAll()
+    {
+        Set<UInt32> ids;
+        synchronized (this)
+        {
+            ids = new LinkedHashSet<>(this.tracked.keySet());
+        }
+        return closeAll(ids);
+    }
+
+    /**
+     * Asks the server to close the notifications without waiting for any replies. Ids which are not tracked are
+     * closed too, but not waited for.
+     *
+     * @return a future completed once every tracked notification is reported closed, with no ids, or when the
+     * timeout passes, with the ids still not reported closed, which are then no longer tracked
+     */
+    public CompletableFuture<Set<UInt32>> closeAll(Collection<UInt32> ids)
+    {
+        Confirmation confirmation = new Confirmation();
+        synchronized (this)
+        {
+            // registered before sending, so no signal can arrive unseen
+            for (UInt32 id : ids)
+            {
+                if (this.tracked.containsKey(id) && confirmation.remaining.add(id))
+                {
+                    this.confirming.computeIfAbsent(id, key -> new ArrayList<>(1)).add(confirmation);
+                }
+            }
+            if (confirmation.remaining.isEmpty())
+            {
+                confirmation.future.complete(Collections.emptySet());
+            }
+        }
+        this.notifications.closeWithoutReply(ids);
+        if (!confirmation.future.isDone())
+        {
+            CompletableFuture.delayedExecutor(this.confirmTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .execute(() -> expire(confirmation));
+        }
+        return confirmation.future;
+    }
+
+    @Override
+    public void onClosed(Notifications.NotificationClosed signal)
+    {
+        UInt32 id = signal.getId();
+        List<Confirmation> confirmed = new ArrayList<>(1);
+        synchronized (this)
+        {
+            if (!forget(id) && this.opening > 0)
+            {
+                this.closedWhileOpening.add(id);
+            }
+            List<Confirmation> confirmations = this.confirming.remove(id);
+            if (confirmations != null)
+            {
+                for (Confirmation confirmation : confirmations)
+                {
+                    if (confirmation.remaining.remove(id) && confirmation.remaining.isEmpty())
+                    {
+                        confirmed.add(confirmation);
+                    }
+                }
+            }
+        }
+        for (Confirmation confirmation : confirmed)
+        {
+            confirmation.future.complete(Collections.emptySet());
+        }
+    }
+
+    private void onNameOwnerChanged(DBus.NameOwnerChanged signal)
+    {
+        if (!this.notifications.getBusName().equals(signal.name))
+        {
+            return;
+        }
+        boolean lost;
+        synchronized (this)
+        {
+            String previous = this.owner;
+            this.owner = signal.newOwner.isEmpty() ? null : signal.newOwner;
+            // a new owner means the previous one is gone, even if the signal of it leaving never arrived
+            lost = !signal.oldOwner.isEmpty() || previous != null && !previous.equals(this.owner);
+            if (lost)
+            {
+                // the server which opened the notifications won't report them closed
+                this.tracked.clear();
+                this.byApp.clear();
+                this.byTag.clear();
+            }
+        }
+        if (lost)
+        {
+            expireAll();
+        }
+    }
+
+    /**
+     * Stops listening for signals. Bulk closes still waiting are completed with the ids not yet reported closed.
+     */
+    @Override
+    public void close()
+    {
+        for (AutoCloseable handler : this.handlers)
+        {
+            try
+            {
+                handler.close();
+            } catch (Exception e)
+            {
+                // the connection is already gone
+            }
+        }
+        this.handlers.clear();
+        expireAll();
+    }
+
+    private void expireAll()
+    {
+        Set<Confirmation> confirmations = new HashSet<>();
+        synchronized (this)
+        {
+            for (List<Confirmation> waiting : this.confirming.values())
+            {
+                confirmations.addAll(waiting);
+            }
+        }
+        for (Confirmation confirmation : confirmations)
+        {
+            expire(confirmation);
+        }
+    }
+
+    private void expire(Confirmation confirmation)
+    {
+        Set<UInt32> unconfirmed;
+        synchronized (this)
+        {
+            unconfirmed = new LinkedHashSet<>(confirmation.remaining);
+            for (UInt32 id : confirmation.remaining)
+            {
+                List<Confirmation> confirmations = this.confirming.get(id);
+                if (confirmations != null && confirmations.remove(confirmation) && confirmations.isEmpty())
+                {
+                    this.confirming.remove(id);
+                }
+                // asked to close and never reported closed, so the server no longer knows it
+                forget(id);
+            }
+            confirmation.remaining.clear();
+        }
+        confirmation.future.complete(Collections.unmodifiableSet(unconfirmed));
+    }
+
+    private boolean forget(UInt32 id)
+    {
+        Tracked entry = this.tracked.remove(id);
+        if (entry == null)
+        {
+            return false;
+        }
+        remove(this.byApp, entry.appName, id);
+        for (String tag : entry.tags)
+        {
+            remove(this.byTag, tag, id);
+        }
+        return true;
+    }
+
+    private static void remove(Map<String, Set<UInt32>> index, String key, UInt32 id)
+    {
+        Set<UInt32> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty())
+        {
+            index.remove(key);
+        }
+    }
+
+    private static Set<UInt32> copy(Set<UInt32> ids)
+    {
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(ids));
+    }
+
+    private static final class Tracked
+    {
+
+        private final String appName;
+
+        private final Set<String> tags;
+
+        Tracked(String appName, String[] tags)
+        {
+            this.appName = appName;
+            this.tags = new LinkedHashSet<>(tags.length);
+            Collections.addAll(this.tags, tags);
+        }
+
+    }
+
+    /**
+     * A bulk close waiting for its signals. The remaining ids are guarded by the enclosing instance.
+     */
+    private static final class Confirmation
+    {
+
+        private final Set<UInt32> remaining = new HashSet<>();
+
+        private final CompletableFuture<Set<UInt32>> future = new CompletableFuture<>();
+
+    }
+
+}
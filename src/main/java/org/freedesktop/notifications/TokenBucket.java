@@ -0,0 +1,65 @@
+package org.freedesktop.notifications;
+
+/**
+ * Allows {@code burst} permits at once, refilled at {@code permitsPerSecond}. Not thread safe.
+ */
+final class TokenBucket
+{
+
+    private final double capacity;
+
+    private final double permitsPerNano;
+
+    private double tokens;
+
+    private long refilled;
+
+    TokenBucket(double permitsPerSecond, int burst, long now)
+    {
+        this.capacity = burst;
+        this.permitsPerNano = permitsPerSecond / 1e9;
+        this.tokens = burst;
+        this.refilled = now;
+    }
+
+    boolean tryAcquire(long now)
+    {
+        refill(now);
+        if (this.tokens >= 1)
+        {
+            this.tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return nanoseconds until a permit is available
+     */
+    long nanosUntilAvailable(long now)
+    {
+        refill(now);
+        if (this.tokens >= 1)
+        {
+            return 0;
+        }
+        return (long) Math.ceil((1 - this.tokens) / this.permitsPerNano);
+    }
+
+    boolean isFull(long now)
+    {
+        refill(now);
+        return this.tokens >= this.capacity;
+    }
+
+    private void refill(long now)
+    {
+        long elapsed = now - this.refilled;
+        if (elapsed > 0)
+        {
+            this.tokens = Math.min(this.capacity, this.tokens + (elapsed * this.permitsPerNano));
+            this.refilled = now;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.freedesktop;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+public class HintsTest
+{
+
+    @Test
+    public void testFrozenHintsSerializeOnce()
+    {
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.CATEGORY, "transfer");
+        Notifications.Hints frozen = hints.freeze();
+        assert frozen.isFrozen();
+        assert frozen.freeze() == frozen;
+        assert frozen.serialize() == frozen.serialize();
+        try
+        {
+            frozen.set(Notifications.HintKey.RESIDENT, true);
+            assert false;
+        } catch (UnsupportedOperationException expected)
+        {
+        }
+    }
+
+    @Test
+    public void testOverlay()
+    {
+        Notifications.Hints template = new Notifications.Hints();
+        template.set(Notifications.HintKey.CATEGORY, "transfer");
+        template.set(Notifications.HintKey.RESIDENT, true);
+        template = template.freeze();
+
+        Notifications.Hints overlay = new Notifications.Hints(template);
+        assert overlay.serialize() == template.serialize();
+
+        overlay.set(Notifications.HintKey.VALUE, 50);
+        overlay.set(Notifications.HintKey.CATEGORY, "im");
+        overlay.remove(Notifications.HintKey.RESIDENT);
+        assert overlay.get(Notifications.HintKey.VALUE) == 50;
+        assert "im".equals(overlay.get(Notifications.HintKey.CATEGORY));
+        assert !overlay.contains(Notifications.HintKey.RESIDENT);
+        assert overlay.keys().equals(Set.of("value", "category")) : overlay.keys();
+        assert template.get(Notifications.HintKey.RESIDENT);
+        assert "transfer".equals(template.get(Notifications.HintKey.CATEGORY));
+    }
+
+    @Test
+    public void testOverlayMarshalling() throws DBusException
+    {
+        Notifications.Hints template = new Notifications.Hints();
+        template.set(Notifications.HintKey.CATEGORY, "transfer");
+        Notifications.Hints overlay = new Notifications.Hints(template);
+        overlay.set(Notifications.HintKey.VALUE, 10);
+
+        MethodCall call = new MethodCall(Notifications.NAME, Notifications.OBJECT_PATH, Notifications.NAME,
+                "Notify", (byte) 0, "a{sv}", overlay.serialize());
+        Map<?, ?> hints = (Map<?, ?>) call.getParameters()[0];
+        assert hints.size() == 2 : hints;
+        assert hints.containsKey("category") && hints.containsKey("value");
+    }
+
+    @Test
+    public void testFrozenActions()
+    {
+        Notifications.Actions actions = new Notifications.Actions()
+                .addAction("default", "Open")
+                .addAction("cancel", "Cancel");
+        Notifications.Actions frozen = actions.freeze();
+        String[] serialized = (String[]) frozen.serialize()[0];
+        assert serialized.length == 4 && "cancel".equals(serialized[2]);
+        assert frozen.serialize() == frozen.serialize();
+        try
+        {
+            frozen.addAction("other", "Other");
+            assert false;
+        } catch (UnsupportedOperationException expected)
+        {
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.freedesktop;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class RawImageTest
+{
+
+    @Test
+    public void testSignature() throws DBusException
+    {
+        String signature = String.join("", Marshalling.getDBusType(Notifications.RawImage.class));
+        assert "(iiibiiay)".equals(signature) : signature;
+    }
+
+    @Test
+    public void testFromArgb()
+    {
+        Notifications.RawImage image = Notifications.RawImage.fromArgb(2, 1, new int[]{ 0x80112233, 0xFF445566 });
+        assert image.getStride() == 8;
+        assert image.getChannels() == 4;
+        assert image.isHasAlpha();
+        byte[] expected = { 0x11, 0x22, 0x33, (byte) 0x80, 0x44, 0x55, 0x66, (byte) 0xFF };
+        assert Arrays.equals(expected, image.getData());
+    }
+
+    @Test
+    public void testFromBufferedImage()
+    {
+        BufferedImage argb = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        argb.setRGB(255, 255, 0x7F010203);
+        Notifications.RawImage image = Notifications.RawImage.fromBufferedImage(argb);
+        assert image.getData().length == 256 * 256 * 4;
+        int last = image.getData().length - 4;
+        assert image.getData()[last] == 1 && image.getData()[last + 3] == 0x7F;
+
+        BufferedImage sub = argb.getSubimage(254, 254, 2, 2);
+        Notifications.RawImage cropped = Notifications.RawImage.fromBufferedImage(sub);
+        assert cropped.getData()[12] == 1 && cropped.getData()[15] == 0x7F;
+
+        BufferedImage rgb = new BufferedImage(3, 2, BufferedImage.TYPE_3BYTE_BGR);
+        rgb.setRGB(2, 1, 0x0A0B0C);
+        Notifications.RawImage opaque = Notifications.RawImage.fromBufferedImage(rgb);
+        assert !opaque.isHasAlpha();
+        assert opaque.getStride() == 9;
+        assert opaque.getData()[15] == 0x0A && opaque.getData()[17] == 0x0C;
+    }
+
+    @Test
+    public void testFromRgbaWrapsArray()
+    {
+        byte[] pixels = new byte[4 * 4 * 4];
+        Notifications.RawImage image = Notifications.RawImage.fromRgba(4, 4, 16, true, ByteBuffer.wrap(pixels));
+        assert image.getData() == pixels;
+    }
+
+}
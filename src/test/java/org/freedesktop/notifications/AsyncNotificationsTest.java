@@ -0,0 +1,202 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class AsyncNotificationsTest
+{
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    @Test
+    public void testWindow() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             GatedServer server = new GatedServer())
+        {
+            server.export(bus.connect());
+            AsyncNotifications async = new AsyncNotifications(bus.connect(), Notifications.NAME, 2,
+                    AsyncNotifications.DEFAULT_TIMEOUT_MILLIS);
+
+            CountDownLatch gate = server.hold();
+            List<CompletableFuture<UInt32>> calls = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                calls.add(open(async, Integer.toString(i)));
+            }
+            assert async.getInFlight() == 2 : async.getInFlight();
+            assert async.getQueued() == 3 : async.getQueued();
+            // never sent
+            assert calls.get(4).cancel(false);
+
+            gate.countDown();
+            for (int i = 0; i < 4; i++)
+            {
+                assert calls.get(i).get(5, TimeUnit.SECONDS).longValue() != 0;
+            }
+            EmbeddedBus.await(() -> async.getInFlight() == 0);
+            assert async.getQueued() == 0;
+            assert new HashSet<>(List.of("0", "1", "2", "3")).equals(new HashSet<>(server.received))
+                    : server.received;
+        }
+    }
+
+    @Test
+    public void testOrder() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             GatedServer server = new GatedServer())
+        {
+            server.export(bus.connect());
+            AsyncNotifications async = new AsyncNotifications(bus.connect(), 1);
+
+            List<CompletableFuture<UInt32>> calls = new ArrayList<>();
+            List<String> summaries = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+            {
+                summaries.add(Integer.toString(i));
+                calls.add(open(async, Integer.toString(i)));
+            }
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assert summaries.equals(server.received) : server.received;
+            for (int i = 1; i < calls.size(); i++)
+            {
+                assert calls.get(i - 1).get().longValue() < calls.get(i).get().longValue();
+            }
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             GatedServer server = new GatedServer())
+        {
+            server.export(bus.connect());
+            AsyncNotifications async = new AsyncNotifications(bus.connect(), Notifications.NAME, 1, 200);
+
+            CountDownLatch gate = server.hold();
+            CompletableFuture<UInt32> slow = open(async, "slow");
+            CompletableFuture<UInt32> next = open(async, "next");
+            assert async.getQueued() == 1;
+            try
+            {
+                slow.get(5, TimeUnit.SECONDS);
+                assert false;
+            } catch (ExecutionException e)
+            {
+                assert e.getCause() instanceof TimeoutException : e.getCause();
+            }
+            // the slot of the call which timed out is given to the next
+            EmbeddedBus.await(() -> async.getQueued() == 0);
+            gate.countDown();
+            assert next.get(5, TimeUnit.SECONDS).longValue() != 0;
+            EmbeddedBus.await(() -> async.getInFlight() == 0);
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus())
+        {
+            DBusConnection connection = bus.connect();
+
+            // nobody owns the name, so every call fails with an error reply
+            AsyncNotifications missing = new AsyncNotifications(connection, "org.example.Missing", 4, 5000);
+            List<CompletableFuture<UInt32>> calls = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+            {
+                calls.add(open(missing, Integer.toString(i)));
+            }
+            for (CompletableFuture<UInt32> call : calls)
+            {
+                try
+                {
+                    call.get(5, TimeUnit.SECONDS);
+                    assert false;
+                } catch (ExecutionException expected)
+                {
+                }
+            }
+            EmbeddedBus.await(() -> missing.getInFlight() == 0);
+
+            // calls fail while they are sent on a closed connection, which must not drain recursively
+            connection.disconnect();
+            AsyncNotifications closed = new AsyncNotifications(connection, Notifications.NAME, 1, 5000);
+            calls.clear();
+            for (int i = 0; i < 10_000; i++)
+            {
+                calls.add(open(closed, Integer.toString(i)));
+            }
+            for (CompletableFuture<UInt32> call : calls)
+            {
+                assert call.isCompletedExceptionally();
+            }
+            assert closed.getInFlight() == 0;
+            assert closed.getQueued() == 0;
+        }
+    }
+
+    private static CompletableFuture<UInt32> open(AsyncNotifications async, String summary)
+    {
+        return async.open("app", NO_REPLACE, "", summary, "", new Notifications.Actions(),
+                new Notifications.Hints(), 0);
+    }
+
+    /**
+     * Records the summary of each notification, and holds its reply while the gate is closed.
+     */
+    private static final class GatedServer extends NotificationServer
+    {
+
+        private final List<String> received = new CopyOnWriteArrayList<>();
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        /**
+         * @return the gate, which holds replies until it is counted down
+         */
+        CountDownLatch hold()
+        {
+            this.gate = new CountDownLatch(1);
+            return this.gate;
+        }
+
+        @Override
+        public UInt32 open(
+                String app_name,
+                UInt32 replaces,
+                String app_icon,
+                String summary,
+                String body,
+                Actions actions,
+                Hints hints,
+                int timeout)
+        {
+            this.received.add(summary);
+            try
+            {
+                this.gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return super.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+        }
+
+    }
+
+}
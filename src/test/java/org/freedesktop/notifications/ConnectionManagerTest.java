@@ -0,0 +1,54 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionManagerTest
+{
+
+    @Test
+    public void testSharedConnection() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus())
+        {
+            AtomicInteger opened = new AtomicInteger();
+            ConnectionManager manager = new ConnectionManager(() -> {
+                opened.incrementAndGet();
+                return bus.connect();
+            });
+
+            ConnectionManager.Lease first = manager.acquire();
+            ConnectionManager.Lease second = manager.acquire();
+            assert opened.get() == 1;
+            assert manager.getLeases() == 2;
+            assert first.getConnection() == second.getConnection();
+            Notifications notifications = first.getNotifications();
+            assert notifications == second.getNotifications();
+
+            DBusConnection connection = first.getConnection();
+            first.close();
+            first.close();
+            assert connection.isConnected();
+            second.close();
+            assert !connection.isConnected();
+            assert manager.getLeases() == 0;
+
+            try (ConnectionManager.Lease third = manager.acquire())
+            {
+                assert opened.get() == 2;
+                assert third.getNotifications() != notifications;
+            }
+            try
+            {
+                first.getConnection();
+                assert false;
+            } catch (IllegalStateException expected)
+            {
+            }
+        }
+    }
+
+}
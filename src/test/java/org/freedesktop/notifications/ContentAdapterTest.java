@@ -0,0 +1,106 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ContentAdapterTest
+{
+
+    private static final String BODY = "Hello <b>world</b> &amp; <a href=\"https://example.org/?a=1&b=2\">link</a>"
+            + "<br><img src=\"file:///tmp/x.png\" alt=\"a picture\"/> <span>x</span> 1 < 2 &nbsp;";
+
+    @Test
+    public void testFullMarkup()
+    {
+        ContentAdapter adapter = new ContentAdapter(Arrays.asList(Notifications.Capabilities.BODY,
+                Notifications.Capabilities.BODY_MARKUP,
+                Notifications.Capabilities.BODY_HYPERLINKS,
+                Notifications.Capabilities.BODY_IMAGES));
+        assert ("Hello <b>world</b> &amp; <a href=\"https://example.org/?a=1&amp;b=2\">link</a>\n"
+                + "<img src=\"file:///tmp/x.png\" alt=\"a picture\"/> x 1 &lt; 2 &amp;nbsp;")
+                .equals(adapter.adaptBody(BODY));
+
+        // unbalanced tags are closed, stray closing tags dropped
+        assert "<b><i>x</i></b>".equals(adapter.adaptBody("<b><i>x</b></i>"));
+        assert "<u>x</u>".equals(adapter.adaptBody("<u>x"));
+        assert "x".equals(adapter.adaptBody("x</b>"));
+
+        String unchanged = "<b>bold</b> &lt;3";
+        assert adapter.adaptBody(unchanged) == unchanged;
+    }
+
+    @Test
+    public void testMarkupWithoutLinksOrImages()
+    {
+        ContentAdapter adapter = new ContentAdapter(Arrays.asList(Notifications.Capabilities.BODY,
+                Notifications.Capabilities.BODY_MARKUP));
+        assert "Hello <b>world</b> &amp; link\na picture x 1 &lt; 2 &amp;nbsp;".equals(adapter.adaptBody(BODY));
+        assert "a &amp; b &lt;i&gt;".equals(adapter.adaptPlainBody("a & b <i>"));
+    }
+
+    @Test
+    public void testPlain()
+    {
+        ContentAdapter adapter = new ContentAdapter(Collections.singleton(Notifications.Capabilities.BODY));
+        assert "Hello world & link\na picture x 1 < 2 &nbsp;".equals(adapter.adaptBody(BODY));
+        assert "caf\u00e9 \uD83D\uDE00 '".equals(adapter.adaptBody("caf&#233; &#x1F600; &apos;"));
+        assert "a & b <i>".equals(adapter.adaptPlainBody("a & b <i>"));
+
+        ContentAdapter noBody = new ContentAdapter(Collections.emptySet());
+        assert noBody.adaptBody(BODY).isEmpty();
+    }
+
+    @Test
+    public void testTruncate()
+    {
+        ContentAdapter adapter = new ContentAdapter(Arrays.asList(Notifications.Capabilities.BODY,
+                Notifications.Capabilities.BODY_MARKUP), 8, 5, ContentAdapter.DEFAULT_MEMO_SIZE);
+        assert ("<b>ab&amp;c</b>d" + ContentAdapter.ELLIPSIS).equals(adapter.adaptBody("<b>ab&amp;c</b>de<i>f</i>"));
+        assert "<b>abcde</b>".equals(adapter.adaptBody("<b>abcde</b>"));
+        assert ("a b c de" + ContentAdapter.ELLIPSIS).equals(adapter.adaptSummary("a\nb\nc defgh"));
+
+        Notification notification = Notification.builder().summary("short").body("<b>x</b>").build();
+        assert adapter.adapt(notification) == notification;
+        Notification adapted = adapter.adapt(notification.toBuilder().body("1 < 2").build());
+        assert "1 &lt; 2".equals(adapted.getBody());
+    }
+
+    @Test
+    public void testMemo()
+    {
+        ContentAdapter adapter = new ContentAdapter(Collections.singleton(Notifications.Capabilities.BODY), 0, 0, 2);
+        String first = adapter.adaptBody("<b>1</b>");
+        assert first == adapter.adaptBody("<b>1</b>");
+        adapter.adaptBody("<b>2</b>");
+        adapter.adaptBody("<b>3</b>");
+        assert adapter.getMemoSize() == 2;
+        assert first != adapter.adaptBody("<b>1</b>");
+
+        // a builder is adapted, but not remembered
+        assert "4".equals(adapter.adaptBody(new StringBuilder("<b>4</b>")));
+        assert adapter.getMemoSize() == 2;
+    }
+
+    @Test
+    public void testLinear()
+    {
+        ContentAdapter adapter = new ContentAdapter(Arrays.asList(Notifications.Capabilities.BODY,
+                Notifications.Capabilities.BODY_MARKUP));
+        // every '<' would otherwise scan to the end looking for the '>'
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200_000; i++)
+        {
+            body.append("<b ");
+        }
+        body.append('>');
+        long start = System.nanoTime();
+        StringBuilder out = new StringBuilder();
+        adapter.adaptBody(body, out);
+        assert System.nanoTime() - start < 2_000_000_000L;
+        assert out.toString().endsWith("&lt;b <b></b>");
+    }
+
+}
@@ -0,0 +1,177 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+public class DeferringNotificationsTest
+{
+
+    @Test
+    public void testDeferral() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer())
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            server.export(serverConnection);
+            // inhibited by another client before the tracker starts
+            UInt32 other = server.inhibit("org.example.Other", "presenting", new Notifications.Hints());
+            DirectNotifications direct = new DirectNotifications(clientConnection);
+            try (InhibitionTracker tracker = new InhibitionTracker(clientConnection, direct);
+                 DeferringNotifications notifications = new DeferringNotifications(direct, tracker))
+            {
+                assert tracker.isInhibited() && tracker.isServerInhibited();
+
+                assert DeferringNotifications.DEFERRED.equals(send(notifications, "mail", "first", null));
+                assert DeferringNotifications.DEFERRED.equals(send(notifications, "mail", "second",
+                        Notifications.Urgency.LOW));
+                UInt32 critical = send(notifications, "alarm", "fire", Notifications.Urgency.CRITICAL);
+                assert server.size() == 1 && server.get(critical) != null;
+                assert notifications.getDeferred() == 2;
+
+                server.release(other);
+                EmbeddedBus.await(() -> server.size() == 2);
+                assert !tracker.isInhibited();
+                assert notifications.getDeferred() == 0;
+                Notification digest = server.get(new UInt32(critical.longValue() + 1));
+                assert "mail".equals(digest.getAppName());
+                assert "2 notifications while inhibited".equals(digest.getSummary());
+                assert "mail: first\nmail: second".equals(digest.getBody());
+
+                // not inhibited, sent straight away
+                assert send(notifications, "chat", "hello", null).longValue() != 0;
+                assert server.size() == 3;
+            }
+        }
+    }
+
+    @Test
+    public void testOwnCookie() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer())
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            server.export(serverConnection);
+            DirectNotifications direct = new DirectNotifications(clientConnection);
+            try (InhibitionTracker tracker = new InhibitionTracker(clientConnection, direct);
+                 DeferringNotifications notifications = new DeferringNotifications(direct, tracker, 2,
+                         DeferringNotifications::summarize))
+            {
+                assert !tracker.isInhibited();
+                UInt32 cookie = notifications.inhibit("org.example.App", "focus", new Notifications.Hints());
+                // deferred from the moment the call returns, without waiting for the signal
+                assert tracker.isInhibited();
+                assert tracker.getCookies().equals(Collections.singleton(cookie));
+                EmbeddedBus.await(tracker::isServerInhibited);
+
+                send(notifications, "mail", "one", null);
+                send(notifications, "chat", "two", null);
+                send(notifications, "chat", "three", null);
+                Notifications.Hints hints = new Notifications.Hints();
+                hints.set(Notifications.HintKey.TRANSIENT, true);
+                assert DeferringNotifications.DEFERRED.equals(
+                        notifications.open("chat", new UInt32(0), "", "gone", "", new Notifications.Actions(),
+                                hints, -1));
+                assert server.size() == 0;
+                assert notifications.getDeferred() == 3;
+                assert notifications.getDropped() == 1;
+
+                notifications.release(cookie);
+                EmbeddedBus.await(() -> server.size() == 1);
+                Notification digest = server.get(new UInt32(1));
+                assert "".equals(digest.getAppName());
+                assert "3 notifications while inhibited".equals(digest.getSummary());
+                assert "chat: two\nchat: three\nand 1 more".equals(digest.getBody());
+                assert !tracker.isInhibited();
+                assert notifications.flush() == null;
+            }
+        }
+    }
+
+    @Test
+    public void testListenerOrder() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer())
+        {
+            server.export(bus.connect());
+            DBusConnection clientConnection = bus.connect();
+            DirectNotifications direct = new DirectNotifications(clientConnection);
+            try (InhibitionTracker tracker = new InhibitionTracker(clientConnection, direct))
+            {
+                List<Boolean> changes = new CopyOnWriteArrayList<>();
+                tracker.addListener(inhibited -> {
+                    // widens the window in which a later change could overtake this one
+                    LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(100_000));
+                    changes.add(inhibited);
+                });
+                // local cookies race the signals of the server's property
+                List<Thread> threads = new ArrayList<>();
+                for (int i = 0; i < 4; i++)
+                {
+                    Thread thread = new Thread(() -> {
+                        for (int j = 0; j < 50; j++)
+                        {
+                            tracker.release(tracker.inhibit("org.example.App", "focus", new Notifications.Hints()));
+                        }
+                    });
+                    thread.start();
+                    threads.add(thread);
+                }
+                for (Thread thread : threads)
+                {
+                    thread.join();
+                }
+                EmbeddedBus.await(() -> !tracker.isInhibited() && !changes.isEmpty()
+                        && !changes.get(changes.size() - 1));
+                for (int i = 0; i < changes.size(); i++)
+                {
+                    // each change undoes the one before
+                    assert changes.get(i) == (i % 2 == 0) : changes;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSummarizeEscapes()
+    {
+        DeferringNotifications.Digest digest = new DeferringNotifications.Digest();
+        digest.add("R&D", "1 < 2", DeferringNotifications.DEFAULT_MAX_LINES);
+        digest.add("R&D", "<b>bold</b>", DeferringNotifications.DEFAULT_MAX_LINES);
+        assert "R&amp;D: 1 &lt; 2\nR&amp;D: &lt;b&gt;bold&lt;/b&gt;".equals(
+                DeferringNotifications.summarize(digest).getBody());
+        ContentAdapter plain = new ContentAdapter(List.of(Notifications.Capabilities.BODY));
+        assert "R&D: 1 < 2\nR&D: <b>bold</b>".equals(DeferringNotifications.summarize(digest, plain).getBody());
+    }
+
+    private static UInt32 send(Notifications notifications, String appName, String summary,
+            Notifications.Urgency urgency)
+    {
+        Notifications.Hints hints = new Notifications.Hints();
+        if (urgency != null)
+        {
+            hints.set(Notifications.HintKey.URGENCY, urgency);
+        }
+        return Notification.builder()
+                .appName(appName)
+                .summary(summary)
+                .hints(hints)
+                .timeout(0)
+                .build()
+                .send(notifications, new UInt32(0));
+    }
+
+}
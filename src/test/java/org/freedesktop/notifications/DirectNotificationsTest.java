@@ -0,0 +1,69 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DirectNotificationsTest
+{
+
+    @Test
+    public void testCalls() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer())
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            server.export(serverConnection);
+            Notifications notifications = new DirectNotifications(clientConnection);
+
+            assert Arrays.equals(server.getCapabilities(), notifications.getCapabilities());
+            Notifications.ServerInformation information = notifications.getServerInformation();
+            assert "dbus-java-desktop".equals(information.getName());
+            assert "1.2".equals(information.getSpecVersion());
+
+            Notifications.Hints hints = new Notifications.Hints();
+            hints.set(Notifications.HintKey.CATEGORY, "im");
+            UInt32 id = Notification.builder()
+                    .summary("summary")
+                    .actions(new Notifications.Actions().addAction("default", "Open").freeze())
+                    .hints(new Notifications.Hints(hints.freeze()))
+                    .timeout(0)
+                    .build()
+                    .send(notifications, new UInt32(0));
+            Notification received = server.get(id);
+            assert "summary".equals(received.getSummary());
+            assert "im".equals(received.getHints().get(Notifications.HintKey.CATEGORY));
+            assert received.getActions().getActions().size() == 1;
+
+            notifications.close(id);
+            assert server.get(id) == null;
+
+            UInt32 first = notifications.open("app", new UInt32(0), "", "first", "", new Notifications.Actions(),
+                    new Notifications.Hints(), 0);
+            UInt32 second = notifications.open("app", new UInt32(0), "", "second", "", new Notifications.Actions(),
+                    new Notifications.Hints(), 0);
+            assert ((DirectNotifications) notifications).closeAll(Arrays.asList(first, second)) == 2;
+            assert server.size() == 0;
+
+            UInt32 cookie = notifications.inhibit("org.example.App", "testing", new Notifications.Hints());
+            assert server.isInhibited();
+            notifications.release(cookie);
+            assert !server.isInhibited();
+
+            try
+            {
+                new DirectNotifications(clientConnection, "org.example.Missing", 5000).getCapabilities();
+                assert false;
+            } catch (DBusExecutionException expected)
+            {
+            }
+        }
+    }
+
+}
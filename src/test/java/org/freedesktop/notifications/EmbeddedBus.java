@@ -0,0 +1,109 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bus daemon running in-process, for tests which need a bus. Closing it disconnects every connection opened
+ * through {@link #connect()}, stops the daemon and deletes its socket.
+ */
+public class EmbeddedBus implements AutoCloseable
+{
+
+    private final Path directory;
+
+    private final Path socket;
+
+    @Getter
+    private final String address;
+
+    private final EmbeddedDBusDaemon daemon;
+
+    private final List<DBusConnection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * Starts a bus listening in a new temporary directory.
+     */
+    public EmbeddedBus() throws Exception
+    {
+        this(Files.createTempDirectory("dbus-test").resolve("bus.sock"), true);
+    }
+
+    /**
+     * Starts a bus listening on the socket given, which is deleted when the bus is closed.
+     */
+    public EmbeddedBus(Path socket) throws Exception
+    {
+        this(socket, false);
+    }
+
+    private EmbeddedBus(Path socket, boolean ownsDirectory) throws Exception
+    {
+        this.socket = socket;
+        this.directory = ownsDirectory ? socket.getParent() : null;
+        this.address = "unix:path=" + socket;
+        this.daemon = new EmbeddedDBusDaemon(this.address + ",listen=true");
+        try
+        {
+            this.daemon.startInBackgroundAndWait(5000);
+        } catch (Exception e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a new, unshared connection to the bus
+     */
+    public DBusConnection connect() throws DBusException
+    {
+        DBusConnection connection = DBusConnectionBuilder.forAddress(this.address).withShared(false).build();
+        this.connections.add(connection);
+        return connection;
+    }
+
+    /**
+     * Waits up to five seconds for the condition to hold, failing the test if it doesn't.
+     */
+    public static void await(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean())
+        {
+            assert System.nanoTime() < deadline : "timed out";
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        for (DBusConnection connection : this.connections)
+        {
+            if (connection.isConnected())
+            {
+                connection.disconnect();
+            }
+        }
+        this.connections.clear();
+        this.daemon.close();
+        Files.deleteIfExists(this.socket);
+        if (this.directory != null)
+        {
+            Files.deleteIfExists(this.directory);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ExpirySchedulerTest
+{
+
+    private static final long TICK = 1000;
+
+    @Test
+    public void testDeadlines() throws DBusException
+    {
+        Map<UInt32, Long> expiredAt = new HashMap<>();
+        List<Integer> batches = new ArrayList<>();
+        long[] now = {0};
+        ExpiryScheduler scheduler = new ExpiryScheduler(ids -> {
+            batches.add(ids.size());
+            for (UInt32 id : ids)
+            {
+                assert expiredAt.put(id, now[0]) == null : id;
+            }
+        }, TICK, 16, 0, false);
+
+        // deadlines up to several turns of the wheel, several per tick
+        for (int i = 1; i <= 10_000; i++)
+        {
+            scheduler.scheduleAt(new UInt32(i), (i % 200) * TICK + 1);
+        }
+        assert scheduler.size() == 10_000;
+        for (int i = 2; i <= 10_000; i += 2)
+        {
+            assert scheduler.cancel(new UInt32(i));
+        }
+        scheduler.onClosed(new Notifications.NotificationClosed(
+                Notifications.OBJECT_PATH, new UInt32(1), new UInt32(Notifications.CloseReason.CLOSED.getCode())));
+        assert !scheduler.cancel(new UInt32(1));
+        // a later deadline replaces the first
+        scheduler.scheduleAt(new UInt32(3), 500 * TICK);
+
+        for (now[0] = 0; now[0] <= 600 * TICK; now[0] += TICK / 2)
+        {
+            scheduler.advance(now[0]);
+        }
+        assert scheduler.size() == 0;
+        assert expiredAt.size() == 10_000 / 2 - 1 : expiredAt.size();
+        for (Map.Entry<UInt32, Long> entry : expiredAt.entrySet())
+        {
+            int id = entry.getKey().intValue();
+            long deadline = id == 3 ? 500 * TICK : (id % 200) * TICK + 1;
+            assert entry.getValue() >= deadline && entry.getValue() < deadline + TICK : id + " at " + entry.getValue();
+        }
+        // every notification due in a tick is expired together: 100 odd deadlines, and the one replaced
+        assert batches.size() == 100 + 1 : batches.size();
+    }
+
+    @Test
+    public void testTicker() throws InterruptedException
+    {
+        CountDownLatch expired = new CountDownLatch(3);
+        try (ExpiryScheduler scheduler = new ExpiryScheduler(ids -> ids.forEach(id -> expired.countDown())))
+        {
+            scheduler.schedule(new UInt32(1), 10, TimeUnit.MILLISECONDS);
+            scheduler.schedule(new UInt32(2), 20, TimeUnit.MILLISECONDS);
+            scheduler.schedule(new UInt32(3), 6, TimeUnit.SECONDS);
+            scheduler.schedule(new UInt32(3), 30, TimeUnit.MILLISECONDS);
+            assert expired.await(5, TimeUnit.SECONDS);
+            assert scheduler.size() == 0;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class ImageCacheTest
+{
+
+    private static Notifications.RawImage image(int color)
+    {
+        int[] pixels = new int[16 * 16];
+        Arrays.fill(pixels, color);
+        return Notifications.RawImage.fromArgb(16, 16, pixels);
+    }
+
+    @Test
+    public void testRewritesImageData() throws IOException
+    {
+        try (ImageCache cache = new ImageCache())
+        {
+            Notifications.Hints first = new Notifications.Hints();
+            first.set(Notifications.HintKey.IMAGE_DATA, image(0xFF00FF00));
+            Notifications.Hints second = new Notifications.Hints();
+            second.set(Notifications.HintKey.IMAGE_DATA, image(0xFF00FF00));
+
+            assert cache.apply(first);
+            assert cache.apply(second);
+            assert !first.contains(Notifications.HintKey.IMAGE_DATA);
+
+            String path = first.get(Notifications.HintKey.IMAGE_PATH);
+            assert path.equals(second.get(Notifications.HintKey.IMAGE_PATH));
+            assert Files.size(Paths.get(URI.create(path))) > 0;
+            assert cache.size() == 1;
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException
+    {
+        Path directory = Files.createTempDirectory("image-cache-test");
+        try (ImageCache cache = new ImageCache(directory, 2, Long.MAX_VALUE))
+        {
+            Path red = Paths.get(URI.create(cache.store(image(0xFFFF0000))));
+            Path green = Paths.get(URI.create(cache.store(image(0xFF00FF00))));
+            cache.store(image(0xFFFF0000));
+            cache.store(image(0xFF0000FF));
+
+            assert cache.size() == 2;
+            assert Files.exists(red);
+            assert !Files.exists(green);
+        } finally
+        {
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testCloseDeletesFiles() throws IOException
+    {
+        ImageCache cache = new ImageCache();
+        cache.store(image(0xFF123456));
+        cache.close();
+        assert !Files.exists(cache.getDirectory());
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+public class InstrumentedNotificationsTest
+{
+
+    @Test
+    public void testMetrics()
+    {
+        RecordingNotifications delegate = new RecordingNotifications()
+        {
+            @Override
+            public void close(UInt32 id)
+            {
+                throw new IllegalStateException("closed");
+            }
+        };
+        SimpleNotificationMetrics metrics = new SimpleNotificationMetrics();
+        Notifications notifications = new InstrumentedNotifications(delegate, metrics);
+
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.IMAGE_DATA, Notifications.RawImage.fromArgb(4, 4, new int[16]));
+        hints.set(Notifications.HintKey.CATEGORY, "im");
+        UInt32 id = Notification.builder().hints(hints).build().send(notifications, new UInt32(0));
+        try
+        {
+            notifications.close(id);
+            assert false;
+        } catch (IllegalStateException expected)
+        {
+        }
+
+        assert metrics.getCalls(NotificationMetrics.Method.NOTIFY) == 1;
+        assert metrics.getErrors(NotificationMetrics.Method.NOTIFY) == 0;
+        assert metrics.getCalls(NotificationMetrics.Method.CLOSE_NOTIFICATION) == 1;
+        assert metrics.getErrors(NotificationMetrics.Method.CLOSE_NOTIFICATION) == 1;
+        assert metrics.getInFlight(NotificationMetrics.Method.NOTIFY) == 0;
+        assert metrics.getHints().getValueAtPercentile(100) == 2;
+        assert metrics.getImageBytes().getValueAtPercentile(50) >= 64;
+        assert metrics.getImageBytes().getValueAtPercentile(50) < 64 * 1.125;
+    }
+
+    @Test
+    public void testHistogramBuckets()
+    {
+        for (long value : new long[]{ 0, 7, 8, 9, 1000, 123_456_789, Long.MAX_VALUE })
+        {
+            long highest = LatencyHistogram.highest(LatencyHistogram.index(value));
+            assert highest >= value && highest - value <= value / 8 : value + " " + highest;
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+        {
+            histogram.record(i * 1000);
+        }
+        long median = histogram.getValueAtPercentile(50);
+        assert median >= 50_000 && median <= 50_000 * 1.125 : median;
+        assert histogram.getCount() == 100;
+    }
+
+}
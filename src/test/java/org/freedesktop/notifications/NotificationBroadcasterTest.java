@@ -0,0 +1,115 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+public class NotificationBroadcasterTest
+{
+
+    @Test
+    public void testBroadcast() throws Exception
+    {
+        Path runtime = Files.createTempDirectory("dbus-runtime");
+        List<AutoCloseable> resources = new ArrayList<>();
+        List<NotificationServer> servers = new ArrayList<>();
+        try
+        {
+            for (int uid = 1000; uid < 1003; uid++)
+            {
+                EmbeddedBus bus = new EmbeddedBus(
+                        Files.createDirectory(runtime.resolve(Integer.toString(uid))).resolve("bus"));
+                resources.add(bus);
+                NotificationServer server = new NotificationServer();
+                resources.add(server);
+                servers.add(server);
+                server.export(bus.connect());
+            }
+            // neither is a bus
+            Files.createDirectory(runtime.resolve("1003"));
+            Files.createFile(Files.createDirectory(runtime.resolve("1004")).resolve("bus"));
+
+            List<String> addresses = NotificationBroadcaster.discover(runtime);
+            assert addresses.size() == 3 : addresses;
+            // a bus nobody is listening on
+            addresses.add("unix:path=" + runtime.resolve("missing"));
+
+            try (NotificationBroadcaster broadcaster = new NotificationBroadcaster(() -> addresses, 2,
+                    address -> DBusConnectionBuilder.forAddress(address).withShared(false).build()))
+            {
+                Notifications.Hints hints = new Notifications.Hints();
+                hints.set(Notifications.HintKey.CATEGORY, "ops");
+                Notification notification = Notification.builder().summary("Maintenance").hints(hints).build();
+
+                NotificationBroadcaster.Result<UInt32> result = broadcaster.broadcast(notification).join();
+                assert result.getValues().size() == 3 : result;
+                assert result.getFailures().size() == 1 : result;
+                assert result.getFailures().containsKey(addresses.get(3));
+                for (NotificationServer server : servers)
+                {
+                    assert server.size() == 1;
+                }
+
+                // a bus which is no longer listed is forgotten
+                addresses.remove(3);
+                assert broadcaster.broadcast(notification).join().getFailures().isEmpty();
+                for (NotificationServer server : servers)
+                {
+                    assert server.size() == 2;
+                }
+
+                assert broadcaster.closeAll(result).join().getFailures().isEmpty();
+                for (int i = 0; i < servers.size(); i++)
+                {
+                    NotificationServer server = servers.get(i);
+                    assert server.size() == 1;
+                    assert server.get(result.getValues().get(addresses.get(i))) == null;
+                }
+            }
+        } finally
+        {
+            for (int i = resources.size() - 1; i >= 0; i--)
+            {
+                resources.get(i).close();
+            }
+            try (Stream<Path> files = Files.walk(runtime))
+            {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testClosed()
+    {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+        {
+            addresses.add("unix:path=/nonexistent/" + i);
+        }
+        NotificationBroadcaster broadcaster = new NotificationBroadcaster(() -> addresses, 1, address -> {
+            throw new AssertionError("connected after close");
+        });
+        broadcaster.close();
+
+        // every bus fails straight away, one after another without recursing
+        NotificationBroadcaster.Result<UInt32> result =
+                broadcaster.broadcast(Notification.builder().summary("Maintenance").build()).join();
+        assert result.getValues().isEmpty();
+        assert result.getFailures().size() == addresses.size();
+        for (Throwable failure : result.getFailures().values())
+        {
+            assert failure instanceof RejectedExecutionException : failure;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class NotificationClientTest
+{
+
+    @Test
+    public void testHandles() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer())
+        {
+            server.export(bus.connect());
+            DBusConnection connection = bus.connect();
+            NotificationClient client = new NotificationClient(connection, new DirectNotifications(connection));
+            try
+            {
+                NotificationHandle handle = client.open(notification("first"));
+                UInt32 id = handle.getId();
+                List<String> actions = new CopyOnWriteArrayList<>();
+                handle.onAction(actions::add);
+
+                // updated in place, under the same id
+                handle.update("second", "body");
+                assert id.equals(handle.getId());
+                assert "second".equals(server.get(id).getSummary());
+                assert "body".equals(handle.getNotification().getBody());
+                assert server.size() == 1;
+
+                assert server.invokeAction(id, "default");
+                assert handle.closed().get(5, TimeUnit.SECONDS) == Notifications.CloseReason.DISMISSED;
+                EmbeddedBus.await(() -> actions.size() == 1);
+                assert "default".equals(actions.get(0));
+                assert handle.isClosed();
+                assert client.size() == 0;
+                try
+                {
+                    handle.update("third", "");
+                    assert false;
+                } catch (IllegalStateException expected)
+                {
+                }
+
+                NotificationHandle closing = client.open(notification("closing"));
+                closing.close();
+                assert closing.closed().get(5, TimeUnit.SECONDS) == Notifications.CloseReason.CLOSED;
+
+                // closing the client fails the futures of the notifications still open
+                NotificationHandle open = client.open(notification("open"));
+                assert client.size() == 1;
+                client.close();
+                assert client.size() == 0;
+                try
+                {
+                    open.closed().get(5, TimeUnit.SECONDS);
+                    assert false;
+                } catch (ExecutionException e)
+                {
+                    assert e.getCause() instanceof IllegalStateException;
+                }
+                assert server.get(open.getId()) != null;
+            } finally
+            {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testClosedBeforeReturning() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new DismissingServer())
+        {
+            server.export(bus.connect());
+            DBusConnection connection = bus.connect();
+            try (NotificationClient client = new NotificationClient(connection, new DirectNotifications(connection)))
+            {
+                List<NotificationHandle> handles = new ArrayList<>();
+                for (int i = 0; i < 100; i++)
+                {
+                    handles.add(client.open(notification("dismissed " + i)));
+                }
+                for (NotificationHandle handle : handles)
+                {
+                    assert handle.closed().get(5, TimeUnit.SECONDS) == Notifications.CloseReason.DISMISSED;
+                }
+                assert client.size() == 0;
+            }
+        }
+    }
+
+    @Test
+    public void testCollected() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationSignals signals = new NotificationSignals(bus.connect());
+             NotificationClient client = new NotificationClient(new RecordingNotifications(), signals, 1024))
+        {
+            List<UInt32> collected = new ArrayList<>();
+            List<CompletableFuture<Notifications.CloseReason>> abandoned = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+            {
+                NotificationHandle handle = client.open(notification("unreachable"));
+                collected.add(handle.getId());
+                // kept without waiting on it
+                abandoned.add(handle.closed());
+            }
+            // still tracked while someone waits for it to close, although the handle is unreachable
+            NotificationHandle awaited = client.open(notification("awaited"));
+            UInt32 awaitedId = awaited.getId();
+            CompletableFuture<Notifications.CloseReason> waiting = awaited.closed().thenApply(reason -> reason);
+            awaited = null;
+            NotificationHandle kept = client.open(notification("kept"));
+
+            EmbeddedBus.await(() -> {
+                System.gc();
+                // collected handles are purged by the next open
+                client.open(notification("purge"));
+                return collected.stream().noneMatch(signals::isRegistered);
+            });
+            assert signals.isRegistered(awaitedId);
+            assert signals.isRegistered(kept.getId());
+            assert !waiting.isDone();
+            for (CompletableFuture<Notifications.CloseReason> future : abandoned)
+            {
+                assert future.isCancelled();
+            }
+        }
+    }
+
+    private static Notification notification(String summary)
+    {
+        return Notification.builder()
+                .summary(summary)
+                .actions(new Notifications.Actions().addAction("default", "Open"))
+                .timeout(0)
+                .build();
+    }
+
+    /**
+     * Closes every notification before the call which opened it returns.
+     */
+    private static final class DismissingServer extends NotificationServer
+    {
+
+        @Override
+        public UInt32 open(
+                String app_name,
+                UInt32 replaces,
+                String app_icon,
+                String summary,
+                String body,
+                Actions actions,
+                Hints hints,
+                int timeout)
+        {
+            UInt32 id = super.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+            dismiss(id);
+            return id;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class NotificationHistoryTest
+{
+
+    @Test
+    public void testIndexes()
+    {
+        NotificationHistory history = new NotificationHistory(200_000, 0, Long.MAX_VALUE, Long.MAX_VALUE, -1);
+        for (int i = 1; i <= 100_000; i++)
+        {
+            Notifications.Hints hints = new Notifications.Hints();
+            hints.set(Notifications.HintKey.CATEGORY, "category" + (i % 10));
+            if (i % 2 == 0)
+            {
+                hints.set(Notifications.HintKey.DESKTOP_ENTRY, "org.example.App" + (i % 100));
+            }
+            history.put(new UInt32(i), Notification.builder().appName("app" + (i % 100)).hints(hints).build());
+        }
+        assert history.size() == 100_000;
+
+        List<UInt32> app = history.getByApp("app7");
+        assert app.size() == 1000;
+        assert app.get(0).intValue() == 7 && app.get(999).intValue() == 99_907;
+        assert history.getByCategory("category3").size() == 10_000;
+        assert history.getByDesktopEntry("org.example.App8").size() == 1000;
+        assert history.getByDesktopEntry("org.example.App7").isEmpty();
+
+        assert history.removeByApp("app7").size() == 1000;
+        assert history.getByApp("app7").isEmpty();
+        assert !history.contains(new UInt32(7));
+        // app7 is in category7, which loses a tenth of its notifications
+        assert history.getByCategory("category7").size() == 9000;
+        assert history.removeByCategory("category7").size() == 9000;
+        assert history.size() == 90_000;
+
+        // replacing moves the notification to its new indexes
+        history.put(new UInt32(1), Notification.builder().appName("other").build());
+        assert history.getByApp("app1").size() == 999;
+        assert history.getByApp("other").size() == 1;
+        assert history.getByCategory("category1").size() == 9999;
+        assert "other".equals(history.get(new UInt32(1)).getAppName());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        long[] now = {0};
+        NotificationHistory history = new NotificationHistory(3, 1000, 1_000_000, 1000, 100, () -> now[0]);
+        for (int i = 1; i <= 4; i++)
+        {
+            now[0] = i * 100;
+            List<UInt32> evicted = history.put(new UInt32(i), Notification.builder().summary("" + i).build());
+            assert evicted.equals(i == 4 ? List.of(new UInt32(1)) : List.of()) : evicted;
+        }
+
+        // images have their own budget
+        assert history.put(new UInt32(5), withImage(600)).equals(List.of(new UInt32(2)));
+        assert history.getImageBytes() == 600 && history.getOffHeapBytes() == 600;
+        // one over the count, then only the notifications with images until those fit
+        assert history.put(new UInt32(6), withImage(600)).equals(List.of(new UInt32(3), new UInt32(5)));
+        assert history.contains(new UInt32(4));
+        assert history.getImageBytes() == 600;
+        assert history.put(new UInt32(7), withImage(50)).isEmpty();
+        assert history.getOffHeapBytes() == 600;
+
+        // spilled images are restored when read
+        byte[] expected = new byte[600];
+        Arrays.fill(expected, (byte) 6);
+        Notifications.RawImage image = history.get(new UInt32(6)).getHints().get(Notifications.HintKey.IMAGE_DATA);
+        assert image.getWidth() == 10 && image.getChannels() == 3;
+        assert Arrays.equals(expected, image.getData());
+        assert "image".equals(history.get(new UInt32(6)).getHints().get(Notifications.HintKey.CATEGORY));
+
+        now[0] += 1001;
+        assert history.evictExpired().equals(List.of(new UInt32(4), new UInt32(6), new UInt32(7)));
+        assert history.size() == 0 && history.getBytes() == 0 && history.getImageBytes() == 0;
+    }
+
+    @Test
+    public void testServer()
+    {
+        NotificationHistory history = new NotificationHistory();
+        try (NotificationServer server = new NotificationServer(NotificationServer.DEFAULT_INFORMATION, 2, 0, history,
+                Notifications.Capabilities.PERSISTENCE))
+        {
+            UInt32 first = Notification.builder().summary("first").timeout(10).build().send(server, new UInt32(0));
+            UInt32 second = Notification.builder().summary("second").build().send(server, new UInt32(0));
+            UInt32 third = Notification.builder().summary("third").build().send(server, new UInt32(0));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (server.get(first) != null && System.nanoTime() < deadline)
+            {
+                Thread.yield();
+            }
+            // expired, or pushed off the screen, but not acknowledged
+            assert server.get(first) == null;
+            assert history.contains(first);
+            server.dismiss(second);
+            server.close(third);
+            assert history.getByApp("").equals(List.of(first));
+        }
+    }
+
+    @Test
+    public void testImagesOverBus() throws Exception
+    {
+        // room for two 64x64 images, each kept off the heap
+        NotificationHistory history = new NotificationHistory(100, 0, Long.MAX_VALUE, 40_000, 16 * 1024);
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer(NotificationServer.DEFAULT_INFORMATION, 100, 0, history,
+                     Notifications.Capabilities.PERSISTENCE))
+        {
+            server.export(bus.connect());
+            DirectNotifications notifications = new DirectNotifications(bus.connect());
+            List<UInt32> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                byte[] data = new byte[64 * 64 * 4];
+                Arrays.fill(data, (byte) i);
+                Notifications.Hints hints = new Notifications.Hints();
+                hints.set(Notifications.HintKey.IMAGE_DATA, Notifications.RawImage.fromRgba(64, 64, true, data));
+                ids.add(Notification.builder().summary("" + i).hints(hints).build().send(notifications,
+                        new UInt32(0)));
+            }
+
+            assert history.size() == 2 : history.size();
+            assert history.getImageBytes() == 2 * 64 * 64 * 4 : history.getImageBytes();
+            assert history.getOffHeapBytes() == history.getImageBytes() : history.getOffHeapBytes();
+            assert !history.contains(ids.get(2)) && history.contains(ids.get(3)) && history.contains(ids.get(4));
+
+            Notifications.RawImage image = history.get(ids.get(4)).getHints().get(Notifications.HintKey.IMAGE_DATA);
+            assert image.getWidth() == 64 && image.getHeight() == 64 && image.isHasAlpha();
+            byte[] expected = new byte[64 * 64 * 4];
+            Arrays.fill(expected, (byte) 4);
+            assert Arrays.equals(expected, image.getData());
+        }
+    }
+
+    private static Notification withImage(int size)
+    {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) (size / 100));
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.IMAGE_DATA, Notifications.RawImage.fromRgba(10, size / 30, false, data));
+        hints.set(Notifications.HintKey.CATEGORY, "image");
+        return Notification.builder().hints(hints).build();
+    }
+
+}
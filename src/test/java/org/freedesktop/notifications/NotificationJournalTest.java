@@ -0,0 +1,80 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class NotificationJournalTest
+{
+
+    @Test
+    public void testRecovery() throws Exception
+    {
+        Path directory = Files.createTempDirectory("journal");
+        Path path = directory.resolve("notifications.journal");
+        try
+        {
+            try (NotificationJournal journal = NotificationJournal.open(path))
+            {
+                Notifications notifications = new JournalingNotifications(new RecordingNotifications(), journal);
+                Notifications.Hints hints = new Notifications.Hints();
+                hints.set(Notifications.HintKey.RESIDENT, true);
+                // enough records to span several mapped regions
+                for (int i = 0; i < 40_000; i++)
+                {
+                    UInt32 id = Notification.builder().appName("app").summary("summary " + i).build()
+                            .send(notifications, new UInt32(0));
+                    notifications.close(id);
+                }
+                Notification.builder().appName("app").hints(hints).build().send(notifications, new UInt32(0));
+                Notification.builder().appName("other").build().send(notifications, new UInt32(0));
+            }
+
+            UInt32 resident;
+            try (NotificationJournal journal = NotificationJournal.open(path))
+            {
+                List<NotificationJournal.Entry> live = journal.getLive();
+                assert live.size() == 2 : live;
+                NotificationJournal.Entry first = live.get(0);
+                assert first.isResident();
+                assert first.getAppHash() == NotificationJournal.hash("app");
+                assert live.get(1).getAppHash() == NotificationJournal.hash("other");
+                resident = first.getId();
+                journal.closed(live.get(1).getId(), Notifications.CloseReason.DISMISSED);
+            }
+            // compacted on open, so only the surviving notifications remain
+            assert Files.size(path) < 2L * 1024 * 1024;
+
+            // a torn record at the end is ignored
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                channel.write(ByteBuffer.wrap(new byte[]{ 1, 0, 0, 0, 9, 9, 9, 9 }), NotificationJournal.RECORD_SIZE * 2L);
+            }
+            try (NotificationJournal journal = NotificationJournal.open(path))
+            {
+                List<NotificationJournal.Entry> live = journal.getLive();
+                assert live.size() == 1 : live;
+                assert live.get(0).getId().equals(resident);
+            }
+        } finally
+        {
+            try (Stream<Path> files = Files.list(directory))
+            {
+                for (Path file : (Iterable<Path>) files::iterator)
+                {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+}
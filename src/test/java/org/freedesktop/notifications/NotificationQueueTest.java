@@ -0,0 +1,132 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class NotificationQueueTest
+{
+
+    private static Notification notification(String summary, Notifications.Urgency urgency)
+    {
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.URGENCY, urgency);
+        return Notification.builder().appName("test").summary(summary).hints(hints).build();
+    }
+
+    @Test
+    public void testCriticalBypassesRateLimit() throws Exception
+    {
+        RecordingNotifications notifications = new RecordingNotifications();
+        try (NotificationQueue queue = new NotificationQueue(notifications, 100, 0.1, 1))
+        {
+            queue.submit(notification("first", Notifications.Urgency.NORMAL)).get(1, TimeUnit.SECONDS);
+            CompletableFuture<UInt32> second = queue.submit(notification("second", Notifications.Urgency.NORMAL));
+            CompletableFuture<UInt32> critical = queue.submit(notification("critical", Notifications.Urgency.CRITICAL));
+
+            critical.get(1, TimeUnit.SECONDS);
+            assert !second.isDone();
+            assert queue.getDepth() == 1;
+            assert "critical".equals(notifications.last().getSummary());
+        }
+    }
+
+    @Test
+    public void testDropsLowUrgencyWhenFull() throws Exception
+    {
+        RecordingNotifications notifications = new RecordingNotifications();
+        try (NotificationQueue queue = new NotificationQueue(notifications, 2, 0.1, 1))
+        {
+            queue.submit(notification("sent", Notifications.Urgency.NORMAL)).get(1, TimeUnit.SECONDS);
+            CompletableFuture<UInt32> low = queue.submit(notification("low", Notifications.Urgency.LOW));
+            CompletableFuture<UInt32> collapsed = queue.submit(notification("low", Notifications.Urgency.LOW));
+            queue.submit(notification("normal", Notifications.Urgency.NORMAL));
+            CompletableFuture<UInt32> normal = queue.submit(notification("normal", Notifications.Urgency.NORMAL));
+            CompletableFuture<UInt32> rejected = queue.submit(notification("rejected", Notifications.Urgency.LOW));
+
+            assert low == collapsed;
+            assert queue.getCollapsed() == 1;
+            assert low.isCompletedExceptionally();
+            assert rejected.isCompletedExceptionally();
+            assert queue.getDropped(Notifications.Urgency.LOW) == 2;
+            assert !normal.isDone();
+            assert queue.getDepth() == 2;
+        }
+    }
+
+    @Test
+    public void testManyApps() throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingNotifications notifications = new RecordingNotifications()
+        {
+            @Override
+            public UInt32 open(
+                    String app_name,
+                    UInt32 replaces,
+                    String app_icon,
+                    String summary,
+                    String body,
+                    Actions actions,
+                    Hints hints,
+                    int timeout)
+            {
+                try
+                {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return super.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+            }
+        };
+        try (NotificationQueue queue = new NotificationQueue(notifications, 10_000, 0.1, 1))
+        {
+            // holds the worker until everything is queued
+            CompletableFuture<UInt32> held = queue.submit(notification("held", Notifications.Urgency.CRITICAL));
+            List<CompletableFuture<UInt32>> first = new ArrayList<>();
+            List<CompletableFuture<UInt32>> throttled = new ArrayList<>();
+            for (int i = 0; i < 1000; i++)
+            {
+                first.add(queue.submit(notification("app" + i, "first", Notifications.Urgency.NORMAL)));
+                throttled.add(queue.submit(notification("app" + i, "second", Notifications.Urgency.NORMAL)));
+            }
+            CompletableFuture<UInt32> low = queue.submit(notification("lazy", "low", Notifications.Urgency.LOW));
+            for (int i = 0; i < 1000; i++)
+            {
+                assert queue.submit(notification("lazy", "low", Notifications.Urgency.LOW)) == low;
+            }
+
+            gate.countDown();
+            held.get(5, TimeUnit.SECONDS);
+            CompletableFuture.allOf(first.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            low.get(5, TimeUnit.SECONDS);
+            // each app's first permit is spent in the order submitted, normal urgency first
+            for (int i = 0; i < 1000; i++)
+            {
+                assert ("app" + i).equals(notifications.getOpened().get(i + 1).getAppName());
+            }
+            assert "lazy".equals(notifications.last().getAppName());
+            assert queue.getCollapsed() == 1000;
+            assert throttled.stream().noneMatch(CompletableFuture::isDone);
+            assert queue.getDepth() == 1000 : queue.getDepth();
+        }
+    }
+
+    private static Notification notification(String appName, String summary, Notifications.Urgency urgency)
+    {
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.URGENCY, urgency);
+        return Notification.builder().appName(appName).summary(summary).hints(hints).build();
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class NotificationServerTest
+{
+
+    private static final UInt32 NO_REPLACE = new UInt32(0);
+
+    @Test
+    public void testInProcess() throws Exception
+    {
+        List<Notifications.CloseReason> reasons = new CopyOnWriteArrayList<>();
+        try (NotificationServer server = new NotificationServer(NotificationServer.DEFAULT_INFORMATION, 2, 0))
+        {
+            server.addListener(new NotificationListener()
+            {
+                @Override
+                public void onClosed(Notifications.NotificationClosed signal)
+                {
+                    reasons.add(Notifications.CloseReason.of(signal.getReason()));
+                }
+            });
+            UInt32 first = Notification.builder().summary("first").build().send(server, NO_REPLACE);
+            UInt32 replaced = Notification.builder().summary("replaced").build().send(server, first);
+            assert first.equals(replaced);
+            assert "replaced".equals(server.get(first).getSummary());
+
+            Notification.builder().summary("second").build().send(server, NO_REPLACE);
+            Notification.builder().summary("third").build().send(server, NO_REPLACE);
+            assert server.size() == 2;
+            assert server.get(first) == null;
+            assert reasons.equals(List.of(Notifications.CloseReason.UNDEFINED)) : reasons;
+
+            UInt32 expiring = Notification.builder().timeout(10).build().send(server, NO_REPLACE);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (server.get(expiring) != null && System.nanoTime() < deadline)
+            {
+                Thread.sleep(5);
+            }
+            assert server.get(expiring) == null;
+            assert reasons.contains(Notifications.CloseReason.EXPIRED) : reasons;
+
+            UInt32 cookie = server.inhibit("org.example.App", "presenting", new Notifications.Hints());
+            assert server.isInhibited();
+            server.release(cookie);
+            assert !server.isInhibited();
+        }
+    }
+
+    @Test
+    public void testOverBus() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer())
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            try (NotificationSignals signals = new NotificationSignals(clientConnection))
+            {
+                server.export(serverConnection);
+                Notifications notifications = clientConnection.getRemoteObject(
+                        Notifications.NAME, Notifications.OBJECT_PATH, Notifications.class);
+                assert "1.2".equals(notifications.getServerInformation().getSpecVersion());
+
+                Notifications.Hints hints = new Notifications.Hints();
+                hints.set(Notifications.HintKey.URGENCY, Notifications.Urgency.CRITICAL);
+                UInt32 id = Notification.builder()
+                        .summary("summary")
+                        .actions(new Notifications.Actions().addAction("default", "Open"))
+                        .hints(hints)
+                        .timeout(0)
+                        .build()
+                        .send(notifications, NO_REPLACE);
+                assert "summary".equals(server.get(id).getSummary());
+                assert server.getUrgency(id) == Notifications.Urgency.CRITICAL;
+
+                CompletableFuture<String> action = new CompletableFuture<>();
+                CompletableFuture<Notifications.CloseReason> closed = new CompletableFuture<>();
+                signals.register(id, new NotificationListener()
+                {
+                    @Override
+                    public void onActionInvoked(Notifications.ActionInvoked signal)
+                    {
+                        action.complete(signal.getAction());
+                    }
+
+                    @Override
+                    public void onClosed(Notifications.NotificationClosed signal)
+                    {
+                        closed.complete(Notifications.CloseReason.of(signal.getReason()));
+                    }
+                });
+                assert server.invokeAction(id, "default");
+                assert "default".equals(action.get(5, TimeUnit.SECONDS));
+                assert closed.get(5, TimeUnit.SECONDS) == Notifications.CloseReason.DISMISSED;
+
+                AsyncNotifications async = new AsyncNotifications(clientConnection);
+                CompletableFuture<?>[] calls = new CompletableFuture<?>[100];
+                for (int i = 0; i < calls.length; i++)
+                {
+                    calls[i] = async.open("app", NO_REPLACE, "", "summary " + i, "", new Notifications.Actions(),
+                            new Notifications.Hints(), 0);
+                }
+                CompletableFuture.allOf(calls).get(10, TimeUnit.SECONDS);
+                assert server.size() == 100 : server.size();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class NotificationSignalsTest
+{
+
+    @Test
+    public void testFiltered() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus())
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection otherConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            NotificationServer server = new NotificationServer();
+            SimpleNotificationMetrics metrics = new SimpleNotificationMetrics();
+            try (NotificationSignals signals = NotificationSignals.filtered(clientConnection, metrics, null))
+            {
+                server.export(serverConnection);
+                Notifications notifications = new DirectNotifications(clientConnection);
+                List<String> received = new CopyOnWriteArrayList<>();
+                NotificationListener listener = new NotificationListener()
+                {
+                    @Override
+                    public void onClosed(Notifications.NotificationClosed signal)
+                    {
+                        received.add("closed " + signal.getId() + " " + signal.getReason());
+                    }
+
+                    @Override
+                    public void onActionInvoked(Notifications.ActionInvoked signal)
+                    {
+                        received.add("action " + signal.getId() + " " + signal.getAction());
+                    }
+                };
+
+                // bound to the server which took the name after the signals were created
+                UInt32 id = open(notifications);
+                signals.register(id, listener);
+                // another client pretending to be the server is not listened to
+                otherConnection.sendMessage(new Notifications.ActionInvoked(Notifications.OBJECT_PATH, id, "forged"));
+                // signals of notifications without a listener are counted, but not delivered
+                UInt32 foreign = open(notifications);
+                server.invokeAction(foreign, "default");
+                server.invokeAction(id, "default");
+                EmbeddedBus.await(() -> received.size() == 2);
+                assert List.of("action " + id + " default", "closed " + id + " 2").equals(received) : received;
+                assert !signals.isRegistered(id);
+                assert metrics.getSignals(Notifications.ActionInvoked.class) == 2;
+                assert metrics.getSignals(Notifications.NotificationClosed.class) == 2;
+
+                // the server restarts under a new unique name
+                serverConnection.disconnect();
+                server.close();
+                serverConnection = bus.connect();
+                server = new NotificationServer();
+                server.export(serverConnection);
+                UInt32 next = open(notifications);
+                signals.register(next, listener);
+                NotificationServer restarted = server;
+                EmbeddedBus.await(() -> {
+                    restarted.dismiss(next);
+                    return received.size() == 3;
+                });
+                assert ("closed " + next + " 2").equals(received.get(2)) : received;
+            } finally
+            {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void testReserve() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationSignals signals = new NotificationSignals(bus.connect()))
+        {
+            List<UInt32> closed = new CopyOnWriteArrayList<>();
+            NotificationListener listener = new NotificationListener()
+            {
+                @Override
+                public void onClosed(Notifications.NotificationClosed signal)
+                {
+                    closed.add(signal.getId());
+                }
+            };
+            UInt32 id = new UInt32(7);
+
+            // without a reservation the close of an id without a listener is not kept
+            signals.dispatch(closedSignal(id));
+            signals.register(id, listener);
+            assert closed.isEmpty();
+            signals.unregister(id);
+
+            try (NotificationSignals.Reservation reservation = signals.reserve())
+            {
+                signals.dispatch(closedSignal(id));
+                signals.register(id, listener);
+                assert List.of(id).equals(closed) : closed;
+                assert !signals.isRegistered(id);
+            }
+
+            // forgotten once the last reservation is released
+            NotificationSignals.Reservation reservation = signals.reserve();
+            signals.dispatch(closedSignal(id));
+            reservation.close();
+            reservation.close();
+            signals.register(id, listener);
+            assert closed.size() == 1;
+            assert signals.isRegistered(id);
+            signals.unregister(id);
+            closed.clear();
+
+            // overlapping reservations: a close is dropped once those held when it arrived are released
+            UInt32 before = new UInt32(8);
+            UInt32 during = new UInt32(9);
+            NotificationSignals.Reservation first = signals.reserve();
+            signals.dispatch(closedSignal(before));
+            NotificationSignals.Reservation second = signals.reserve();
+            signals.dispatch(closedSignal(during));
+            first.close();
+            signals.register(before, listener);
+            signals.register(during, listener);
+            assert List.of(during).equals(closed) : closed;
+            signals.unregister(before);
+            closed.clear();
+            NotificationSignals.Reservation third = signals.reserve();
+            second.close();
+
+            // and only the latest are kept, however long reservations overlap
+            for (int i = 0; i <= NotificationSignals.MAX_EARLY_CLOSES; i++)
+            {
+                signals.dispatch(closedSignal(new UInt32(1000 + i)));
+            }
+            signals.register(new UInt32(1000), listener);
+            signals.register(new UInt32(1000 + NotificationSignals.MAX_EARLY_CLOSES), listener);
+            assert List.of(new UInt32(1000 + NotificationSignals.MAX_EARLY_CLOSES)).equals(closed) : closed;
+            third.close();
+        }
+    }
+
+    private static Notifications.NotificationClosed closedSignal(UInt32 id) throws DBusException
+    {
+        return new Notifications.NotificationClosed(Notifications.OBJECT_PATH, id, new UInt32(2));
+    }
+
+    private static UInt32 open(Notifications notifications)
+    {
+        Notifications.Actions actions = new Notifications.Actions().addAction("default", "Open");
+        return notifications.open("app", new UInt32(0), "", "summary", "", actions, new Notifications.Hints(), 0);
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.freedesktop.notifications;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OrderedExecutorTest
+{
+
+    @Test
+    public void testOrderedPerKey() throws InterruptedException
+    {
+        ExecutorService pool = CallbackExecutors.newBoundedExecutor(4);
+        try
+        {
+            OrderedExecutor executor = new OrderedExecutor(pool);
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch otherKey = new CountDownLatch(1);
+            List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            executor.execute("slow", () -> {
+                try
+                {
+                    blocked.await();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute("slow", () -> {
+                throw new IllegalStateException("reported, not fatal");
+            });
+            for (int i = 0; i < 100; i++)
+            {
+                int value = i;
+                executor.execute("slow", () -> order.add(value));
+            }
+            executor.execute("fast", otherKey::countDown);
+
+            // a blocked key must not hold up other keys
+            assert otherKey.await(5, TimeUnit.SECONDS);
+            assert order.isEmpty();
+            blocked.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (executor.getPendingKeys() > 0 && System.nanoTime() < deadline)
+            {
+                Thread.sleep(5);
+            }
+            assert executor.getPendingKeys() == 0;
+            assert order.size() == 100;
+            for (int i = 0; i < 100; i++)
+            {
+                assert order.get(i) == i : order;
+            }
+        } finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejected()
+    {
+        AtomicInteger submitted = new AtomicInteger();
+        OrderedExecutor executor = new OrderedExecutor(task -> {
+            if (submitted.incrementAndGet() == 2)
+            {
+                throw new RejectedExecutionException("reported, not fatal");
+            }
+            task.run();
+        });
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            int value = i;
+            executor.execute("key", () -> order.add(value));
+        }
+        // only the rejected task is lost
+        assert List.of(0, 2, 3, 4).equals(order) : order;
+        assert executor.getPendingKeys() == 0;
+    }
+
+}
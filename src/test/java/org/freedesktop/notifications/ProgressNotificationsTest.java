@@ -0,0 +1,79 @@
+package org.freedesktop.notifications;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class ProgressNotificationsTest
+{
+
+    @Test
+    public void testCoalescesReports() throws InterruptedException
+    {
+        RecordingNotifications notifications = new RecordingNotifications();
+        try (ProgressNotifications progress = new ProgressNotifications(notifications, 50))
+        {
+            ProgressStream stream = progress.start(Notification.builder().appName("test").summary("Download").build());
+            long deadline = System.currentTimeMillis() + 300;
+            int percent = 0;
+            while (System.currentTimeMillis() < deadline)
+            {
+                stream.report(percent++ % 100);
+            }
+            stream.complete(100, "Download", "Done");
+            stream.report(1);
+            Thread.sleep(150);
+
+            assert stream.getReports() > 1000 : stream.getReports();
+            assert stream.getSent() <= 300 / 50 + 2 : stream.getSent();
+            assert notifications.getOpened().size() == stream.getSent();
+            assert "Done".equals(notifications.last().getBody());
+            assert notifications.getReplaced().get(0).longValue() == 0;
+            assert notifications.getReplaced().stream().skip(1).allMatch(id -> id.equals(stream.getId()));
+            assert progress.size() == 0;
+        }
+    }
+
+    @Test
+    public void testCompletesOnce() throws InterruptedException
+    {
+        RecordingNotifications notifications = new RecordingNotifications();
+        try (ProgressNotifications progress = new ProgressNotifications(notifications, 1000))
+        {
+            for (int round = 0; round < 100; round++)
+            {
+                ProgressStream stream = progress.start(Notification.builder().appName("test").summary("Task").build());
+                CountDownLatch start = new CountDownLatch(1);
+                List<Thread> threads = new ArrayList<>();
+                for (int i = 0; i < 4; i++)
+                {
+                    String body = Integer.toString(i);
+                    Thread thread = new Thread(() -> {
+                        try
+                        {
+                            start.await();
+                        } catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                        stream.complete(100, "Task", body);
+                    });
+                    thread.start();
+                    threads.add(thread);
+                }
+                start.countDown();
+                for (Thread thread : threads)
+                {
+                    thread.join();
+                }
+                assert stream.isCompleted();
+                assert stream.getSent() == 1 : stream.getSent();
+                assert progress.size() == 0;
+            }
+            assert notifications.getOpened().size() == 100 : notifications.getOpened().size();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ReconnectBufferTest
+{
+
+    @Test
+    public void testReplayAfterRestart() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus())
+        {
+            DBusConnection clientConnection = bus.connect();
+            DBusConnection serverConnection = bus.connect();
+            NotificationServer server = new NotificationServer();
+            server.export(serverConnection);
+            try (ReconnectBuffer buffer = new ReconnectBuffer(clientConnection,
+                    new DirectNotifications(clientConnection),
+                    2,
+                    ReconnectBuffer.OverflowPolicy.DROP_OLDEST_LOWEST,
+                    TimeUnit.MINUTES.toMillis(1)))
+            {
+                UInt32 first = buffer.submit(notification("first", Notifications.Urgency.NORMAL))
+                        .get(5, TimeUnit.SECONDS);
+                assert server.get(first) != null;
+
+                // the server goes away
+                serverConnection.disconnect();
+                server.close();
+                CompletableFuture<UInt32> missed = buffer.submit(notification("missed", Notifications.Urgency.NORMAL));
+                EmbeddedBus.await(() -> !buffer.isAvailable());
+                assert !missed.isDone();
+
+                CompletableFuture<UInt32> low = buffer.submit(notification("low", Notifications.Urgency.LOW));
+                CompletableFuture<UInt32> normal = buffer.submit(notification("normal", Notifications.Urgency.NORMAL));
+                CompletableFuture<UInt32> critical =
+                        buffer.submit(notification("critical", Notifications.Urgency.CRITICAL));
+                // full: the low urgency notification makes room, then a second low one is refused
+                CompletableFuture<UInt32> last = buffer.submit(notification("last", Notifications.Urgency.NORMAL));
+                CompletableFuture<UInt32> refused = buffer.submit(notification("refused", Notifications.Urgency.LOW));
+                assert isRejected(low);
+                assert isRejected(refused);
+                assert buffer.getDropped(Notifications.Urgency.LOW) == 2;
+                assert buffer.getBuffered() == 4;
+
+                // a new server takes the name
+                serverConnection = bus.connect();
+                server = new NotificationServer();
+                server.export(serverConnection);
+                List<String> order = new ArrayList<>();
+                for (CompletableFuture<UInt32> future : List.of(missed, normal, critical, last))
+                {
+                    order.add(server.get(future.get(5, TimeUnit.SECONDS)).getSummary());
+                }
+                assert List.of("missed", "normal", "critical", "last").equals(order) : order;
+                assert missed.get().longValue() < normal.get().longValue();
+                assert normal.get().longValue() < critical.get().longValue();
+                assert critical.get().longValue() < last.get().longValue();
+                assert buffer.getSent() == 5;
+            } finally
+            {
+                server.close();
+            }
+        }
+    }
+
+    private static Notification notification(String summary, Notifications.Urgency urgency)
+    {
+        Notifications.Hints hints = new Notifications.Hints();
+        hints.set(Notifications.HintKey.URGENCY, urgency);
+        return Notification.builder().summary(summary).hints(hints).build();
+    }
+
+    private static boolean isRejected(CompletableFuture<UInt32> future)
+    {
+        if (!future.isDone())
+        {
+            return false;
+        }
+        try
+        {
+            future.join();
+            return false;
+        } catch (CompletionException e)
+        {
+            return e.getCause() instanceof RejectedExecutionException;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.freedesktop.notifications;
+
+import lombok.Getter;
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.types.UInt32;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link Notifications} that records every call, for tests which don't need a bus.
+ */
+@Getter
+public class RecordingNotifications implements Notifications
+{
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final List<Notification> opened = new CopyOnWriteArrayList<>();
+
+    private final List<UInt32> replaced = new CopyOnWriteArrayList<>();
+
+    private final List<UInt32> closed = new CopyOnWriteArrayList<>();
+
+    private final String[] capabilities;
+
+    public RecordingNotifications(String... capabilities)
+    {
+        this.capabilities = capabilities;
+    }
+
+    @Override
+    public UInt32 open(
+            String app_name,
+            UInt32 replaces,
+            String app_icon,
+            String summary,
+            String body,
+            Actions actions,
+            Hints hints,
+            int timeout)
+    {
+        this.opened.add(Notification.builder()
+                .appName(app_name)
+                .appIcon(app_icon)
+                .summary(summary)
+                .body(body)
+                .actions(actions)
+                .hints(hints)
+                .timeout(timeout)
+                .build());
+        this.replaced.add(replaces);
+        return replaces.longValue() != 0 ? replaces : new UInt32(this.ids.incrementAndGet());
+    }
+
+    @Override
+    public void close(UInt32 id)
+    {
+        this.closed.add(id);
+    }
+
+    @Override
+    public String[] getCapabilities()
+    {
+        return this.capabilities;
+    }
+
+    @Override
+    public ServerInformation getServerInformation()
+    {
+        return new ServerInformation("recording", "dbus-java-desktop", "1.0", "1.2");
+    }
+
+    @Override
+    public UInt32 inhibit(String desktop_entry, String reason, Hints hints)
+    {
+        return new UInt32(1);
+    }
+
+    @Override
+    public void release(UInt32 cookie)
+    {
+    }
+
+    @Override
+    public String getObjectPath()
+    {
+        return OBJECT_PATH;
+    }
+
+    public Notification last()
+    {
+        return this.opened.get(this.opened.size() - 1);
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.Notifications;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ServerCapabilitiesTest
+{
+
+    @Test
+    public void testOwnerChange() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus())
+        {
+            DBusConnection clientConnection = bus.connect();
+            try (ServerCapabilities capabilities = new ServerCapabilities(clientConnection,
+                    new DirectNotifications(clientConnection)))
+            {
+                CountingServer first = new CountingServer("1.2", Notifications.Capabilities.ACTIONS);
+                DBusConnection firstConnection = bus.connect();
+                first.export(firstConnection);
+                EmbeddedBus.await(() -> capabilities.getOwner() != null);
+
+                assert capabilities.supports(Notifications.Capabilities.ACTIONS);
+                assert !capabilities.supports(Notifications.Capabilities.BODY);
+                assert capabilities.supports(Notifications.HintKey.ACTION_ICONS);
+                assert "1.2".equals(capabilities.getServerInformation().getSpecVersion());
+                // queried once, then answered from the cache
+                assert first.queries.get() == 1 : first.queries;
+
+                // the server goes away and another takes the name; the embedded daemon's signal for the name
+                // losing its owner can't be decoded, so the change is seen when the next server takes it
+                String firstOwner = capabilities.getOwner();
+                firstConnection.disconnect();
+                first.close();
+                CountingServer second = new CountingServer("1.10", Notifications.Capabilities.BODY, "x-vendor");
+                DBusConnection secondConnection = bus.connect();
+                second.export(secondConnection);
+                EmbeddedBus.await(() -> secondConnection.getUniqueName().equals(capabilities.getOwner()));
+                assert !firstOwner.equals(capabilities.getOwner());
+
+                assert !capabilities.supports(Notifications.Capabilities.ACTIONS);
+                assert capabilities.supports(Notifications.Capabilities.BODY);
+                assert capabilities.supports("x-vendor");
+                assert capabilities.supports(Notifications.HintKey.ACTION_ICONS);
+                assert second.queries.get() == 1 : second.queries;
+                second.close();
+            }
+        }
+    }
+
+    @Test
+    public void testChangedDuringQuery() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus())
+        {
+            AtomicInteger queries = new AtomicInteger();
+            ServerCapabilities[] holder = new ServerCapabilities[1];
+            RecordingNotifications notifications = new RecordingNotifications(Notifications.Capabilities.BODY)
+            {
+                @Override
+                public String[] getCapabilities()
+                {
+                    if (queries.incrementAndGet() == 1)
+                    {
+                        // the owner changes while the first query is answered
+                        holder[0].invalidate();
+                    }
+                    return super.getCapabilities();
+                }
+            };
+            try (ServerCapabilities capabilities = new ServerCapabilities(bus.connect(), notifications))
+            {
+                holder[0] = capabilities;
+                assert capabilities.supports(Notifications.Capabilities.BODY);
+                // the answer may have come from the previous owner, so it isn't cached
+                assert capabilities.supports(Notifications.Capabilities.BODY);
+                assert capabilities.supports(Notifications.Capabilities.BODY);
+                assert queries.get() == 2 : queries;
+            }
+        }
+    }
+
+    @Test
+    public void testParseVersion()
+    {
+        assert ServerCapabilities.parseVersion("1.10") > ServerCapabilities.parseVersion("1.2");
+        assert ServerCapabilities.parseVersion("2.0") > ServerCapabilities.parseVersion("1.10");
+        assert ServerCapabilities.parseVersion("1.2") == ServerCapabilities.parseVersion("1.2.3");
+        assert ServerCapabilities.parseVersion("1") == ServerCapabilities.parseVersion("1.0");
+        assert ServerCapabilities.parseVersion(null) == 0;
+        assert ServerCapabilities.parseVersion("unknown") == 0;
+    }
+
+    /**
+     * Counts the queries for its capabilities.
+     */
+    private static final class CountingServer extends NotificationServer
+    {
+
+        private final AtomicInteger queries = new AtomicInteger();
+
+        CountingServer(String specVersion, String... capabilities)
+        {
+            super(new Notifications.ServerInformation("counting", "dbus-java-desktop", "1.0", specVersion),
+                    DEFAULT_CAPACITY, DEFAULT_TIMEOUT_MILLIS, capabilities);
+        }
+
+        @Override
+        public String[] getCapabilities()
+        {
+            this.queries.incrementAndGet();
+            return super.getCapabilities();
+        }
+
+    }
+
+}
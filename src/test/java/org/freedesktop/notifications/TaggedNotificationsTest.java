@@ -0,0 +1,148 @@
+package org.freedesktop.notifications;
+
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TaggedNotificationsTest
+{
+
+    @Test
+    public void testBulkClose() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer(NotificationServer.DEFAULT_INFORMATION, 4096, 0))
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            try (TaggedNotifications tagged = new TaggedNotifications(clientConnection))
+            {
+                server.export(serverConnection);
+
+                for (int i = 0; i < 2000; i++)
+                {
+                    tagged.open(notification(i), "tenant-" + i % 4);
+                }
+                assert server.size() == 2000;
+                assert tagged.getByApp("mail").size() == 1000;
+                assert tagged.getByTag("tenant-1").size() == 500;
+
+                assert tagged.closeTag("tenant-1").get(5, TimeUnit.SECONDS).isEmpty();
+                assert server.size() == 1500;
+                assert tagged.getByTag("tenant-1").isEmpty();
+                assert tagged.getByApp("chat").size() == 500;
+
+                assert tagged.closeApp("chat").get(5, TimeUnit.SECONDS).isEmpty();
+                assert server.size() == 1000;
+                assert tagged.getByTag("tenant-3").isEmpty();
+
+                // closing the same notifications twice at once confirms both
+                Set<UInt32> tenant0 = tagged.getByTag("tenant-0");
+                CompletableFuture<Set<UInt32>> once = tagged.closeAll(tenant0);
+                CompletableFuture<Set<UInt32>> twice = tagged.closeAll(tenant0);
+                assert once.get(5, TimeUnit.SECONDS).isEmpty();
+                assert twice.get(5, TimeUnit.SECONDS).isEmpty();
+
+                // ids which are not tracked are sent but not waited for
+                UInt32 untracked = notification(0).send(tagged.getNotifications(), new UInt32(0));
+                assert tagged.closeAll(Collections.singleton(untracked)).isDone();
+
+                assert tagged.closeAll().get(5, TimeUnit.SECONDS).isEmpty();
+                assert tagged.size() == 0;
+                assert server.size() == 0;
+            }
+        }
+    }
+
+    @Test
+    public void testUnconfirmed() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer restarted = new NotificationServer())
+        {
+            DBusConnection serverConnection = bus.connect();
+            DBusConnection clientConnection = bus.connect();
+            try (TaggedNotifications tagged = new TaggedNotifications(clientConnection,
+                    new DirectNotifications(clientConnection), 200))
+            {
+                try (NotificationServer server = new NotificationServer())
+                {
+                    server.export(serverConnection);
+                    tagged.open(notification(0), "lost");
+                    tagged.open(notification(1), "lost");
+                    assert tagged.size() == 2;
+                    serverConnection.disconnect();
+                }
+                // another server took the name, so it won't know the notifications
+                restarted.export(bus.connect());
+                EmbeddedBus.await(() -> tagged.size() == 0);
+                assert tagged.getByTag("lost").isEmpty();
+
+                // never reported closed, so forgotten once the bulk close gives up
+                UInt32 ghost = new UInt32(1000);
+                tagged.track(ghost, "mail", "ghost");
+                Set<UInt32> unconfirmed = tagged.closeTag("ghost").get(5, TimeUnit.SECONDS);
+                assert unconfirmed.equals(Collections.singleton(ghost)) : unconfirmed;
+                assert tagged.getByTag("ghost").isEmpty();
+                assert tagged.size() == 0;
+
+                tagged.track(ghost, "mail", "ghost");
+                assert tagged.untrack(ghost);
+                assert !tagged.untrack(ghost);
+                assert tagged.getByApp("mail").isEmpty();
+            }
+        }
+    }
+
+    @Test
+    public void testClosedBeforeReturning() throws Exception
+    {
+        try (EmbeddedBus bus = new EmbeddedBus();
+             NotificationServer server = new NotificationServer()
+             {
+                 @Override
+                 public UInt32 open(
+                         String app_name,
+                         UInt32 replaces,
+                         String app_icon,
+                         String summary,
+                         String body,
+                         Actions actions,
+                         Hints hints,
+                         int timeout)
+                 {
+                     UInt32 id = super.open(app_name, replaces, app_icon, summary, body, actions, hints, timeout);
+                     dismiss(id);
+                     return id;
+                 }
+             })
+        {
+            server.export(bus.connect());
+            DBusConnection clientConnection = bus.connect();
+            try (TaggedNotifications tagged = new TaggedNotifications(clientConnection))
+            {
+                for (int i = 0; i < 100; i++)
+                {
+                    tagged.open(notification(i), "dismissed");
+                }
+                EmbeddedBus.await(() -> tagged.size() == 0);
+                assert tagged.getByTag("dismissed").isEmpty();
+            }
+        }
+    }
+
+    private static Notification notification(int i)
+    {
+        return Notification.builder()
+                .appName(i % 2 == 0 ? "mail" : "chat")
+                .summary("summary " + i)
+                .timeout(0)
+                .build();
+    }
+
+}